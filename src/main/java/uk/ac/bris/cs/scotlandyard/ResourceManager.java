@@ -8,7 +8,7 @@ import com.google.common.graph.ImmutableValueGraph;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
@@ -17,6 +17,7 @@ import io.github.fastclasspathscanner.FastClasspathScanner;
 import javafx.geometry.Point2D;
 import javafx.scene.image.Image;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.NodePositions;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
@@ -34,7 +35,7 @@ public final class ResourceManager {
 
 	private Map<ImageResource, Image> imageResources;
 	private Map<Ticket, Image> ticketResources;
-	private Map<Integer, Entry<Integer, Integer>> mapCoordinates;
+	private NodePositions mapPositions;
 	private ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
 
 	/**
@@ -55,7 +56,7 @@ public final class ResourceManager {
 				identity(),
 				ticket -> loadImage(format("/tickets/%s.png", ticket.name().toLowerCase())))));
 
-		mapCoordinates = ImmutableMap.copyOf(ScotlandYard.pngMapPositionEntries());
+		mapPositions = ScotlandYard.pngMapPositions();
 		graph = ScotlandYard.standardGraph();
 	}
 
@@ -72,9 +73,19 @@ public final class ResourceManager {
 	@Nonnull
 	public ImmutableValueGraph<Integer, ImmutableSet<Transport>> getGraph() { return graph; }
 
+	@Nonnull public NodePositions getMapPositions() { return mapPositions; }
+
 	@javax.annotation.Nullable public Point2D coordinateAtNode(int node) {
-		var entry = mapCoordinates.get(node);
-		return new Point2D(entry.getKey(), entry.getValue());
+		return new Point2D(mapPositions.x(node), mapPositions.y(node));
+	}
+
+	/**
+	 * @param point a point on the map
+	 * @return the node drawn under the given point, if any
+	 */
+	@Nonnull public Optional<Integer> nodeAtCoordinate(@Nonnull Point2D point) {
+		int node = mapPositions.nearest(point.getX(), point.getY(), ScotlandYard.MAP_NODE_SIZE);
+		return node == NodePositions.NONE ? Optional.empty() : Optional.of(node);
 	}
 
 	public static Ai instantiateAi(Class<Ai> cls) {
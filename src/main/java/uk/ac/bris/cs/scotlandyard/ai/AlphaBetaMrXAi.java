@@ -0,0 +1,411 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveCodec;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution.MovementModel;
+import uk.ac.bris.cs.scotlandyard.model.MutableGameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * An {@link Ai} for MrX searching the game tree by iterative deepening alpha-beta, one move of one
+ * piece per ply, with the detectives minimising what MrX maximises.
+ * <br>
+ * Moves are made and taken back on a {@link MutableGameState}. Positions are stored in a
+ * fixed-size transposition table indexed by the low bits of their Zobrist hash and kept between
+ * turns. Moves are tried in the order: the table's best move, the two killer moves of the ply, then
+ * by a history of the cutoffs each piece's destination caused. Every depth after the first starts
+ * with an aspiration window around the last score, widened whenever the score falls outside it.
+ * Leaves are scored by MrX's distances to the detectives, from a {@link DistanceTable}.
+ * <br>
+ * The clock is checked every {@value #CHECK_INTERVAL} nodes. The first depth is always finished, and
+ * once the time given to {@link #pickMove(Board, Pair)} is nearly up the depth in progress is
+ * abandoned and the best move of the last finished one returned. Given a detectives' turn, it moves
+ * the detective closing in most on MrX's most likely location.
+ */
+public final class AlphaBetaMrXAi implements Ai {
+
+	/**
+	 * The score of a position MrX has won, less the plies it takes
+	 */
+	public static final int WIN = 1_000_000;
+	/**
+	 * The default number of index bits of the transposition table, 2^20 entries of 24 bytes, which
+	 * are allocated on the first search
+	 */
+	public static final int DEFAULT_TABLE_BITS = 20;
+
+	private static final int MAX_PLY = 128;
+	private static final int INFINITY = WIN + 1;
+	private static final int CHECK_INTERVAL = 1024;
+	private static final int ASPIRATION = 32;
+	// the time kept back from the budget is a tenth of it, but at least this
+	private static final long MIN_MARGIN = TimeUnit.MILLISECONDS.toNanos(100);
+	// the largest map leaves are scored on; larger ones only tell wins from losses
+	private static final int MAX_DISTANCE_NODES = 4096;
+	private static final int FAR = 8;
+	private static final int CLOSEST_WEIGHT = 16;
+	private static final long NO_MOVE = -1;
+	private static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+	private final int maxDepth;
+	private final int mask;
+	// the transposition table, null until the first search
+	private long[] keys;
+	private long[] bestMoves;
+	private int[] scores;
+	// depth in the low 8 bits, bound in the next 2, generation above
+	private int[] infos;
+	private int generation;
+
+	// sized to the bound of the game searched on first use of each ply
+	private final long[][] moves = new long[MAX_PLY][0];
+	private final int[][] order = new int[MAX_PLY][0];
+	private int capacity;
+	private final long[][] killers = new long[MAX_PLY][2];
+	// [piece index * node bound + destination] -> the depth squared of the cutoffs it caused
+	private int[] history = new int[0];
+	private int bound;
+
+	private MutableGameState state;
+	@Nullable private DistanceTable distances;
+	private Detective[] detectives;
+	private long deadline;
+	private boolean mayAbort, aborted;
+	private long nodes;
+	@Nullable private volatile SearchStatistics lastSearch;
+
+	/**
+	 * Creates an Ai with a transposition table of {@link #DEFAULT_TABLE_BITS}.
+	 */
+	public AlphaBetaMrXAi() { this(DEFAULT_TABLE_BITS, MAX_PLY - 1); }
+
+	/**
+	 * @param tableBits the number of index bits of the transposition table
+	 * @param maxDepth the deepest search, in plies
+	 */
+	AlphaBetaMrXAi(int tableBits, int maxDepth) {
+		if (tableBits < 0 || tableBits > 28)
+			throw new IllegalArgumentException("Table bits out of range: " + tableBits);
+		if (maxDepth < 1 || maxDepth >= MAX_PLY)
+			throw new IllegalArgumentException("Depth out of range: " + maxDepth);
+		this.maxDepth = maxDepth;
+		this.mask = (1 << tableBits) - 1;
+	}
+
+	@Nonnull @Override public String name() { return "Alpha-beta MrX"; }
+
+	@Override public void onStart() { if (keys != null) clearTable(); }
+
+	@Override public void onTerminate() { state = null; }
+
+	// allocates the table on first use
+	private void clearTable() {
+		if (keys == null) {
+			keys = new long[mask + 1];
+			bestMoves = new long[mask + 1];
+			scores = new int[mask + 1];
+			infos = new int[mask + 1];
+		}
+		Arrays.fill(infos, 0);
+		Arrays.fill(bestMoves, NO_MOVE);
+		Arrays.fill(keys, 0);
+		generation = 1;
+	}
+
+	/**
+	 * @return what the last search did; empty before the first
+	 */
+	@Nonnull public Optional<SearchStatistics> lastSearch() { return Optional.ofNullable(lastSearch); }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		final long start = System.nanoTime();
+		final long budget = timeoutPair.right().toNanos(timeoutPair.left());
+		final var available = board.getAvailableMoves().asList();
+		if (available.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (available.size() == 1) return available.get(0);
+		final var graph = CompiledGraph.of(board.getSetup().graph);
+		distances = graph.nodeBound() <= MAX_DISTANCE_NODES ? DistanceTable.of(graph) : null;
+		if (!available.get(0).commencedBy().isMrX()) return chase(board, available);
+		if (graph.nodeBound() > MoveCodec.MAX_NODE + 1) return available.get(0);
+
+		deadline = start + Math.max(0, budget - Math.max(budget / 10, MIN_MARGIN));
+		state = MutableGameState.of(board, available.get(0).source());
+		capacity = state.maxAvailableMoves();
+		if (keys == null) clearTable();
+		detectives = board.getPlayers().stream().filter(Piece::isDetective)
+				.map(Detective.class::cast).toArray(Detective[]::new);
+		if (bound != graph.nodeBound()) {
+			bound = graph.nodeBound();
+			history = new int[ScotlandYard.ALL_PIECES.size() * bound];
+		} else for (int i = 0; i < history.length; i++) history[i] >>= 2;
+		for (long[] ply : killers) Arrays.fill(ply, NO_MOVE);
+		generation = (generation + 1) & 0x3fffff;
+		nodes = 0;
+
+		final long[] rootMoves = new long[available.size()];
+		for (int i = 0; i < rootMoves.length; i++) rootMoves[i] = MoveCodec.encode(available.get(i));
+		long best = rootMoves[0];
+		int score = 0, depth = 0;
+		for (int d = 1; d <= maxDepth; d++) {
+			// the first depth always finishes so that there is a move to return
+			mayAbort = d > 1;
+			if (mayAbort && System.nanoTime() >= deadline) break;
+			aborted = false;
+			int delta = ASPIRATION, alpha = -INFINITY, beta = INFINITY;
+			if (d > 1) {
+				alpha = Math.max(-INFINITY, score - delta);
+				beta = Math.min(INFINITY, score + delta);
+			}
+			int result;
+			while (true) {
+				result = searchRoot(d, alpha, beta, rootMoves);
+				if (aborted) break;
+				if (result <= alpha && alpha > -INFINITY) alpha = Math.max(-INFINITY, result - delta);
+				else if (result >= beta && beta < INFINITY) beta = Math.min(INFINITY, result + delta);
+				else break;
+				delta *= 2;
+			}
+			if (aborted) break;
+			score = result;
+			depth = d;
+			best = rootMoves[0];
+			// a forced result does not change with depth
+			if (Math.abs(score) >= WIN - MAX_PLY) break;
+		}
+		lastSearch = new SearchStatistics(depth, score, nodes, System.nanoTime() - start);
+		for (Move move : available) if (MoveCodec.encode(move) == best) return move;
+		throw new AssertionError("Best move is not available");
+	}
+
+	// searches every root move, moving each new best to the front so the next depth starts with it
+	private int searchRoot(int depth, int alpha, int beta, long[] rootMoves) {
+		int best = -INFINITY;
+		for (int i = 0; i < rootMoves.length; i++) {
+			state.doMove(rootMoves[i]);
+			final int score = search(depth - 1, Math.max(alpha, best), beta, 1);
+			state.undoMove();
+			if (aborted) return best;
+			if (score > best) {
+				best = score;
+				final long move = rootMoves[i];
+				System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+				rootMoves[0] = move;
+			}
+			if (best >= beta) break;
+		}
+		return best;
+	}
+
+	// the score of the state for MrX, with MrX maximising and the detectives minimising
+	private int search(int depth, int alpha, int beta, int ply) {
+		if (++nodes % CHECK_INTERVAL == 0 && mayAbort && System.nanoTime() >= deadline) aborted = true;
+		if (aborted) return 0;
+		if (state.isGameOver()) return state.getWinner().contains(MrX.MRX) ? WIN - ply : ply - WIN;
+		if (depth == 0 || ply == MAX_PLY - 1) return evaluate();
+
+		final long key = state.getZobristHash();
+		final int slot = (int) key & mask;
+		long tableMove = NO_MOVE;
+		if (keys[slot] == key && infos[slot] != 0) {
+			tableMove = bestMoves[slot];
+			if ((infos[slot] & 0xff) >= depth) {
+				final int score = fromTable(scores[slot], ply);
+				final int kind = infos[slot] >>> 8 & 0b11;
+				if (kind == EXACT || kind == LOWER && score >= beta || kind == UPPER && score <= alpha)
+					return score;
+			}
+		}
+
+		final int count = generate(ply);
+		final long[] moves = this.moves[ply];
+		final boolean maximising = MoveCodec.pieceIndex(moves[0]) == 0;
+		score(ply, count, tableMove);
+		final int alpha0 = alpha, beta0 = beta;
+		int best = maximising ? -INFINITY : INFINITY;
+		long bestMove = moves[0];
+		for (int i = 0; i < count; i++) {
+			final long move = next(ply, i, count);
+			state.doMove(move);
+			final int score = search(depth - 1, alpha, beta, ply + 1);
+			state.undoMove();
+			if (aborted) return 0;
+			if (maximising ? score > best : score < best) {
+				best = score;
+				bestMove = move;
+			}
+			if (maximising) alpha = Math.max(alpha, score);
+			else beta = Math.min(beta, score);
+			if (alpha >= beta) {
+				cutoff(ply, depth, move);
+				break;
+			}
+		}
+
+		final int kind = maximising
+				? best <= alpha0 ? UPPER : best >= beta ? LOWER : EXACT
+				: best >= beta0 ? LOWER : best <= alpha ? UPPER : EXACT;
+		final int stored = infos[slot];
+		// keep a deeper entry of the same position, or one of this search for another
+		if ((stored & 0xff) <= depth || keys[slot] != key && (stored >>> 10) != generation) {
+			keys[slot] = key;
+			bestMoves[slot] = bestMove;
+			scores[slot] = toTable(best, ply);
+			infos[slot] = generation << 10 | kind << 8 | depth;
+		}
+		return best;
+	}
+
+	// wins are stored as plies from the stored position rather than from the root
+	private static int toTable(int score, int ply) {
+		return score >= WIN - MAX_PLY ? score + ply : score <= MAX_PLY - WIN ? score - ply : score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		return score >= WIN - MAX_PLY ? score - ply : score <= MAX_PLY - WIN ? score + ply : score;
+	}
+
+	private int generate(int ply) {
+		if (moves[ply].length < capacity) {
+			moves[ply] = new long[capacity];
+			order[ply] = new int[capacity];
+		}
+		return state.availableMoves(moves[ply]);
+	}
+
+	// the ordering score of every move: the table move, then killers, then history
+	private void score(int ply, int count, long tableMove) {
+		final long[] moves = this.moves[ply];
+		final int[] order = this.order[ply];
+		for (int i = 0; i < count; i++) {
+			final long move = moves[i];
+			if (move == tableMove) order[i] = Integer.MAX_VALUE;
+			else if (move == killers[ply][0]) order[i] = Integer.MAX_VALUE - 1;
+			else if (move == killers[ply][1]) order[i] = Integer.MAX_VALUE - 2;
+			// a DOUBLE ticket spent is a DOUBLE ticket gone, so single moves go first on ties
+			else order[i] = Math.min(history[historyIndex(move)], Integer.MAX_VALUE / 2) * 2
+					+ (MoveCodec.isDouble(move) ? 0 : 1);
+		}
+	}
+
+	// selects the best of the moves from the given index on and swaps it there
+	private long next(int ply, int from, int count) {
+		final long[] moves = this.moves[ply];
+		final int[] order = this.order[ply];
+		int best = from;
+		for (int i = from + 1; i < count; i++) if (order[i] > order[best]) best = i;
+		final long move = moves[best];
+		moves[best] = moves[from];
+		moves[from] = move;
+		final int score = order[best];
+		order[best] = order[from];
+		order[from] = score;
+		return move;
+	}
+
+	private void cutoff(int ply, int depth, long move) {
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		final int index = historyIndex(move);
+		history[index] = (int) Math.min(Integer.MAX_VALUE / 2, history[index] + (long) depth * depth);
+	}
+
+	private int historyIndex(long move) {
+		return MoveCodec.pieceIndex(move) * bound + MoveCodec.destination(move);
+	}
+
+	// MrX wants the closest detective, and then all of them, as far as possible
+	private int evaluate() {
+		if (distances == null) return 0;
+		final int mrX = state.getMrXLocation();
+		int closest = FAR, total = 0;
+		for (Detective detective : detectives) {
+			int d = distances.distance(state.getDetectiveLocation(detective).orElseThrow(), mrX);
+			if (d == DistanceTable.UNREACHABLE || d > FAR) d = FAR;
+			closest = Math.min(closest, d);
+			total += d;
+		}
+		return CLOSEST_WEIGHT * closest + total;
+	}
+
+	// the detective move ending closest to where MrX most likely is
+	private Move chase(Board board, List<Move> available) {
+		if (distances == null) return available.get(0);
+		final int target = MrXLocationDistribution.of(board, MovementModel.uniform()).mostLikely();
+		if (target == -1) return available.get(0);
+		Move best = available.get(0);
+		int bestDistance = Integer.MAX_VALUE;
+		for (Move move : available) {
+			int d = distances.distance(move.accept(new Move.FunctionalVisitor<>(
+					m -> m.destination, m -> m.destination2)), target);
+			if (d == DistanceTable.UNREACHABLE) d = Integer.MAX_VALUE - 1;
+			if (d < bestDistance) {
+				best = move;
+				bestDistance = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * What one search did
+	 */
+	public static final class SearchStatistics {
+		private final int depth;
+		private final int score;
+		private final long nodes;
+		private final long nanos;
+
+		SearchStatistics(int depth, int score, long nodes, long nanos) {
+			this.depth = depth;
+			this.score = score;
+			this.nodes = nodes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the deepest search finished, in plies
+		 */
+		public int depth() { return depth; }
+		/**
+		 * @return the score of the move picked for MrX, {@link #WIN} less the plies for a win
+		 */
+		public int score() { return score; }
+		/**
+		 * @return the number of positions searched
+		 */
+		public long nodes() { return nodes; }
+		/**
+		 * @return the time the search took, in nanoseconds
+		 */
+		public long nanos() { return nanos; }
+		/**
+		 * @return the number of positions searched per second
+		 */
+		public double nodesPerSecond() { return nanos == 0 ? 0 : nodes * 1e9 / nanos; }
+
+		@Override public String toString() {
+			return String.format("depth %d, score %d, %d nodes, %.0f nodes/s in %d ms",
+					depth, score, nodes, nodesPerSecond(), TimeUnit.NANOSECONDS.toMillis(nanos));
+		}
+	}
+}
@@ -0,0 +1,532 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
+import uk.ac.bris.cs.scotlandyard.model.DistanceTable;
+import uk.ac.bris.cs.scotlandyard.model.ImmutableBoard;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MoveCodec;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution.MovementModel;
+import uk.ac.bris.cs.scotlandyard.model.MutableGameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.Zobrist;
+
+/**
+ * A Monte Carlo tree search {@link Ai} for either side, searching on every core at once.
+ * <br>
+ * The workers share one tree (tree parallelism). Each node keeps its visits and wins packed into a
+ * single {@code long} updated with one atomic add, and its children in a sorted array replaced by
+ * compare-and-set, so no worker ever takes a lock. A worker descending through a node adds a
+ * {@link #VIRTUAL_LOSS} to it, which steers the others to different branches until its result is
+ * backed up. Moves are made and taken back on a {@link MutableGameState} per worker; playouts pick
+ * the move closing in on or getting away from the other side, by {@link DistanceTable}, most of
+ * the time and a random one otherwise.
+ * <br>
+ * Detectives do not know where MrX is, so every iteration of their search places him at a node
+ * drawn from a {@link MrXLocationDistribution} of his travel log, and only the moves legal there
+ * are considered. The subtree of the position reached is kept between turns, found again by the
+ * Zobrist hash of what the side searching can see, and the search spends most of the time given to
+ * {@link #pickMove(Board, Pair)}, always returning the most visited move once the time is up.
+ * {@link #lastSearch()} reports how fast the last search went.
+ */
+public final class MonteCarloAi implements Ai {
+
+	/**
+	 * The visits added to a node while a worker's iteration through it is in flight
+	 */
+	public static final int VIRTUAL_LOSS = 3;
+	/**
+	 * The most tree nodes a single search creates
+	 */
+	public static final int MAX_NODES = 1 << 21;
+
+	private static final double EXPLORATION = 0.7;
+	// the chance of a random rather than a greedy move in a playout
+	private static final double RANDOM_RATE = 0.25;
+	// the largest map playouts build a distance table for; larger ones play at random
+	private static final int MAX_DISTANCE_NODES = 4096;
+	// the most moves between two consecutive turns of the same side
+	private static final int REUSE_DEPTH = ScotlandYard.ALL_PIECES.size();
+	// the time kept back from the budget is a tenth of it, but at least this
+	private static final long MIN_MARGIN = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final int MRX_SIDE = 0, DETECTIVE_SIDE = 1;
+	private static final int FAR = 0xff;
+
+	private final int threads;
+	private final SplittableRandom seeds;
+	@Nullable private ExecutorService executor;
+	// [side] -> the root of the last search of that side
+	private final Node[] retained = new Node[2];
+	@Nullable private MrXLocationDistribution distribution;
+	@Nullable private volatile SearchStatistics lastSearch;
+
+	/**
+	 * Creates an Ai searching on every available processor.
+	 */
+	public MonteCarloAi() { this(Runtime.getRuntime().availableProcessors(), System.nanoTime()); }
+
+	/**
+	 * @param threads the number of workers searching at once
+	 * @param seed the seed of the workers' random moves
+	 */
+	public MonteCarloAi(int threads, long seed) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+		this.threads = threads;
+		this.seeds = new SplittableRandom(seed);
+	}
+
+	@Nonnull @Override public String name() { return "Monte Carlo (" + threads + " threads)"; }
+
+	@Override public void onStart() {
+		Arrays.fill(retained, null);
+		distribution = null;
+	}
+
+	@Override public void onTerminate() {
+		Arrays.fill(retained, null);
+		distribution = null;
+		if (executor != null) executor.shutdownNow();
+		executor = null;
+	}
+
+	/**
+	 * @return what the last search did; empty before the first
+	 */
+	@Nonnull public Optional<SearchStatistics> lastSearch() {
+		return Optional.ofNullable(lastSearch);
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		final long start = System.nanoTime();
+		final long budget = timeoutPair.right().toNanos(timeoutPair.left());
+		final long deadline = start + Math.max(0, budget - Math.max(budget / 10, MIN_MARGIN));
+		final var snapshot = new ImmutableBoard(board);
+		final var moves = snapshot.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		if (moves.size() == 1) return moves.get(0);
+		final var graph = CompiledGraph.of(snapshot.getSetup().graph);
+		if (graph.nodeBound() > MoveCodec.MAX_NODE + 1)
+			return moves.get(seeds.nextInt(moves.size()));
+
+		final boolean mrXSide = moves.get(0).commencedBy().isMrX();
+		final Search search = mrXSide
+				? new Search(snapshot, graph, deadline, moves.get(0).source(), null, null)
+				: detectiveSearch(snapshot, graph, deadline);
+		final int side = mrXSide ? MRX_SIDE : DETECTIVE_SIDE;
+		search.root = search.reuse(retained[side]);
+		final long reused = visits(search.root.stats);
+
+		final var workers = new ArrayList<Search.Worker>(threads);
+		for (int i = 0; i < threads; i++) workers.add(search.new Worker(seeds.split()));
+		try {
+			for (Future<Void> future : executor().invokeAll(workers)) future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("A search worker failed", e.getCause());
+		} finally {
+			search.stopped = true;
+		}
+
+		long iterations = 0, states = 0;
+		for (Search.Worker worker : workers) {
+			iterations += worker.iterations;
+			states += worker.states;
+		}
+		lastSearch = new SearchStatistics(iterations, states, search.created.get(), reused,
+				System.nanoTime() - start, threads);
+		final Node best = search.root.mostVisited();
+		retained[side] = best;
+		if (best != null) for (Move move : moves)
+			if (MoveCodec.encode(move) == best.move) return move;
+		return moves.get(seeds.nextInt(moves.size()));
+	}
+
+	private Search detectiveSearch(Board board, CompiledGraph graph, long deadline) {
+		if (distribution == null)
+			distribution = MrXLocationDistribution.of(board, MovementModel.uniform());
+		else distribution.update(board);
+		final var probabilities = new double[graph.nodeBound()];
+		distribution.copyTo(probabilities);
+		int count = 0;
+		for (double p : probabilities) if (p > 0) count++;
+		final int[] locations = new int[count];
+		final double[] cumulative = new double[count];
+		double total = 0;
+		for (int node = 0, i = 0; node < probabilities.length; node++)
+			if (probabilities[node] > 0) {
+				total += probabilities[node];
+				locations[i] = node;
+				cumulative[i++] = total;
+			}
+		return new Search(board, graph, deadline, distribution.mostLikely(), locations, cumulative);
+	}
+
+	private ExecutorService executor() {
+		if (executor == null || executor.isShutdown())
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+					.setNameFormat("monte-carlo-%d")
+					.setDaemon(true)
+					.build());
+		return executor;
+	}
+
+	private static final AtomicLongFieldUpdater<Node> STATS =
+			AtomicLongFieldUpdater.newUpdater(Node.class, "stats");
+	private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static int visits(long stats) { return (int) (stats >>> 32); }
+
+	private static int wins(long stats) { return (int) stats; }
+
+	/**
+	 * A position of the tree, reached by one packed move from its parent
+	 */
+	static final class Node {
+		final long move;
+		// the hash of what the side searching sees after the move
+		final long key;
+		final boolean byMrX;
+		// visits in the upper half, wins of the piece that made the move in the lower half
+		volatile long stats;
+		// sorted by move
+		volatile Node[] children = NO_CHILDREN;
+
+		Node(long move, long key, boolean byMrX, long stats) {
+			this.move = move;
+			this.key = key;
+			this.byMrX = byMrX;
+			this.stats = stats;
+		}
+
+		@Nullable Node mostVisited() {
+			Node best = null;
+			for (Node child : children)
+				if (best == null || visits(child.stats) > visits(best.stats)) best = child;
+			return best;
+		}
+
+		// the index of the child with the given move, or -(insertion point) - 1
+		static int indexOf(Node[] children, long move) {
+			int low = 0, high = children.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				long m = children[mid].move;
+				if (m < move) low = mid + 1;
+				else if (m > move) high = mid - 1;
+				else return mid;
+			}
+			return -(low + 1);
+		}
+	}
+
+	private static final class Search {
+		final Board board;
+		final long deadline;
+		final int rootMrX;
+		// the nodes MrX is drawn from and their cumulative probabilities; null when he is known
+		@Nullable final int[] locations;
+		@Nullable final double[] cumulative;
+		@Nullable final DistanceTable distances;
+		final Detective[] detectives;
+		final AtomicInteger created = new AtomicInteger();
+		Node root;
+		volatile boolean stopped;
+
+		Search(Board board, CompiledGraph graph, long deadline, int rootMrX,
+		       @Nullable int[] locations, @Nullable double[] cumulative) {
+			this.board = board;
+			this.deadline = deadline;
+			this.rootMrX = rootMrX;
+			this.locations = locations;
+			this.cumulative = cumulative;
+			this.distances = graph.nodeBound() <= MAX_DISTANCE_NODES ? DistanceTable.of(graph) : null;
+			this.detectives = board.getPlayers().stream().filter(Piece::isDetective)
+					.map(Detective.class::cast).toArray(Detective[]::new);
+		}
+
+		boolean hidden() { return locations != null; }
+
+		// the hash of what the side searching sees; detectives do not see where MrX is
+		long key(MutableGameState state) {
+			return hidden()
+					? state.getZobristHash() ^ Zobrist.location(MrX.MRX, state.getMrXLocation())
+					: state.getZobristHash();
+		}
+
+		// the most visited node within reach of the old root seeing the current position, or a
+		// new root
+		Node reuse(@Nullable Node old) {
+			final long key = key(MutableGameState.of(board, rootMrX));
+			Node best = null;
+			if (old != null) {
+				var frontier = new ArrayDeque<Node>(List.of(old));
+				for (int depth = 0; depth <= REUSE_DEPTH && !frontier.isEmpty(); depth++) {
+					for (int n = frontier.size(); n > 0; n--) {
+						Node node = frontier.poll();
+						if (node.key == key) {
+							if (best == null || visits(node.stats) > visits(best.stats)) best = node;
+						} else frontier.addAll(Arrays.asList(node.children));
+					}
+				}
+			}
+			return best != null ? best : new Node(-1, key, false, 0);
+		}
+
+		final class Worker implements Callable<Void> {
+			private final SplittableRandom random;
+			// [MrX location] -> the state of the board with MrX there
+			private final Map<Integer, MutableGameState> roots = new HashMap<>();
+			private final int[] detectiveLocations = new int[detectives.length];
+			private long[] moves = new long[64];
+			private int moveCount;
+			private Node[] path = new Node[64];
+			long iterations, states;
+
+			Worker(SplittableRandom random) { this.random = random; }
+
+			@Override public Void call() {
+				while (!stopped && System.nanoTime() < deadline
+						&& !Thread.currentThread().isInterrupted()) {
+					iterate(rootState());
+					iterations++;
+				}
+				return null;
+			}
+
+			private MutableGameState rootState() {
+				int mrX = rootMrX;
+				if (hidden()) {
+					int i = Arrays.binarySearch(cumulative,
+							random.nextDouble() * cumulative[cumulative.length - 1]);
+					mrX = locations[Math.min(i < 0 ? -(i + 1) : i, locations.length - 1)];
+				}
+				return roots.computeIfAbsent(mrX, location -> MutableGameState.of(board, location));
+			}
+
+			private void iterate(MutableGameState state) {
+				final int rootDepth = state.depth();
+				Node node = root;
+				int length = 0;
+				STATS.getAndAdd(node, (long) VIRTUAL_LOSS << 32);
+				path[length++] = node;
+				boolean expanded = false;
+				while (!expanded && !state.isGameOver()) {
+					generate(state);
+					Node child = expand(node, state);
+					if (child != null) expanded = true;
+					else if ((child = select(node)) == null) break;
+					else STATS.getAndAdd(child, (long) VIRTUAL_LOSS << 32);
+					state.doMove(child.move);
+					states++;
+					if (length == path.length) path = Arrays.copyOf(path, length * 2);
+					path[length++] = child;
+					node = child;
+				}
+				final boolean mrXWins = playout(state);
+				while (state.depth() > rootDepth) state.undoMove();
+				for (int i = 0; i < length; i++)
+					STATS.getAndAdd(path[i],
+							((long) (1 - VIRTUAL_LOSS) << 32) + (path[i].byMrX == mrXWins ? 1 : 0));
+			}
+
+			// adds a child for a legal move without one, starting at a random move so that the
+			// workers expand different ones; null once every legal move has a child or the tree
+			// is full
+			@Nullable private Node expand(Node node, MutableGameState state) {
+				final Node[] children = node.children;
+				if (created.get() >= MAX_NODES) return null;
+				// without hidden information the legal moves are the same on every visit
+				if (!hidden() && children.length >= moveCount) return null;
+				final int offset = random.nextInt(moveCount);
+				for (int i = 0; i < moveCount; i++) {
+					final long move = moves[(offset + i) % moveCount];
+					if (Node.indexOf(children, move) >= 0) continue;
+					state.doMove(move);
+					final var child = new Node(move, key(state),
+							MoveCodec.pieceIndex(move) == 0, (long) VIRTUAL_LOSS << 32);
+					state.undoMove();
+					while (true) {
+						final Node[] current = node.children;
+						final int at = Node.indexOf(current, move);
+						// another worker added it first
+						if (at >= 0) return null;
+						final int insert = -(at + 1);
+						final Node[] next = new Node[current.length + 1];
+						System.arraycopy(current, 0, next, 0, insert);
+						next[insert] = child;
+						System.arraycopy(current, insert, next, insert + 1, current.length - insert);
+						if (CHILDREN.compareAndSet(node, current, next)) {
+							created.incrementAndGet();
+							return child;
+						}
+					}
+				}
+				return null;
+			}
+
+			// the legal child with the highest upper confidence bound
+			@Nullable private Node select(Node node) {
+				final Node[] children = node.children;
+				final double logVisits = Math.log(Math.max(1, visits(node.stats)));
+				Node best = null;
+				double bestScore = Double.NEGATIVE_INFINITY;
+				for (int i = 0; i < moveCount; i++) {
+					final int at = Node.indexOf(children, moves[i]);
+					if (at < 0) continue;
+					final Node child = children[at];
+					final long stats = child.stats;
+					final int visits = visits(stats);
+					final double score = visits == 0 ? Double.POSITIVE_INFINITY
+							: (double) wins(stats) / visits
+									+ EXPLORATION * Math.sqrt(logVisits / visits);
+					if (score > bestScore) {
+						best = child;
+						bestScore = score;
+					}
+				}
+				return best;
+			}
+
+			// plays the game out from the given state, returning whether MrX won
+			private boolean playout(MutableGameState state) {
+				while (!state.isGameOver()) {
+					generate(state);
+					if (moveCount == 0) break;
+					final long move = moveCount == 1 ? moves[0]
+							: distances == null || random.nextDouble() < RANDOM_RATE
+									? moves[random.nextInt(moveCount)] : greedy(state);
+					state.doMove(move);
+					states++;
+				}
+				return state.getWinner().contains(MrX.MRX);
+			}
+
+			// the move taking MrX furthest from the closest detective, or a detective closest
+			// to MrX, the first on ties
+			private long greedy(MutableGameState state) {
+				final boolean mrX = MoveCodec.pieceIndex(moves[0]) == 0;
+				for (int i = 0; i < detectives.length; i++)
+					detectiveLocations[i] = state.getDetectiveLocation(detectives[i]).orElseThrow();
+				long best = moves[0];
+				int bestScore = Integer.MIN_VALUE;
+				for (int i = 0; i < moveCount; i++) {
+					final long move = moves[i];
+					final int destination = MoveCodec.destination(move);
+					int score;
+					if (mrX) {
+						score = FAR;
+						for (int location : detectiveLocations)
+							score = Math.min(score, distance(location, destination));
+						// keep DOUBLE tickets for when they make a difference
+						score = 2 * score - (MoveCodec.isDouble(move) ? 1 : 0);
+					} else score = -distance(destination, state.getMrXLocation());
+					if (score > bestScore) {
+						best = move;
+						bestScore = score;
+					}
+				}
+				return best;
+			}
+
+			private int distance(int source, int target) {
+				final int d = distances.distance(source, target);
+				return d == DistanceTable.UNREACHABLE ? FAR : d;
+			}
+
+			private void generate(MutableGameState state) {
+				moveCount = 0;
+				state.forEachMove(move -> {
+					if (moveCount == moves.length) moves = Arrays.copyOf(moves, moveCount * 2);
+					moves[moveCount++] = MoveCodec.encode(move);
+				});
+			}
+		}
+	}
+
+	/**
+	 * What one search did
+	 */
+	public static final class SearchStatistics {
+		private final long iterations;
+		private final long states;
+		private final int nodes;
+		private final long reusedVisits;
+		private final long nanos;
+		private final int threads;
+
+		SearchStatistics(long iterations, long states, int nodes, long reusedVisits, long nanos,
+		                 int threads) {
+			this.iterations = iterations;
+			this.states = states;
+			this.nodes = nodes;
+			this.reusedVisits = reusedVisits;
+			this.nanos = nanos;
+			this.threads = threads;
+		}
+
+		/**
+		 * @return the number of playouts
+		 */
+		public long iterations() { return iterations; }
+		/**
+		 * @return the number of states moved into, in the tree and in playouts
+		 */
+		public long states() { return states; }
+		/**
+		 * @return the number of tree nodes created
+		 */
+		public int nodes() { return nodes; }
+		/**
+		 * @return the visits of the root carried over from the previous turn
+		 */
+		public long reusedVisits() { return reusedVisits; }
+		/**
+		 * @return the time the search took, in nanoseconds
+		 */
+		public long nanos() { return nanos; }
+		/**
+		 * @return the number of states moved into per second
+		 */
+		public double nodesPerSecond() { return nanos == 0 ? 0 : states * 1e9 / nanos; }
+
+		@Override public String toString() {
+			return String.format("%d playouts, %d tree nodes, %.0f nodes/s on %d threads in %d ms"
+							+ " (%d visits reused)",
+					iterations, nodes, nodesPerSecond(), threads,
+					TimeUnit.NANOSECONDS.toMillis(nanos), reusedVisits);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Builds {@link GameState}s laid out as arrays indexed by the position of each piece in
+ * {@link ScotlandYard#ALL_PIECES}, instead of as {@link Player}s: locations are an {@code int[6]},
+ * ticket counts one flat {@code int[]} and the reveal rounds of the setup a bitmask. Looking up a
+ * player is an array access and advancing copies two small arrays.
+ * <br>
+ * The rules are those of {@link MyGameStateFactory}, this factory is selectable through
+ * {@link ModelFactories}. Moves are packed with {@link MoveCodec} on advance, so nodes must be in
+ * its range.
+ */
+public final class ArrayGameStateFactory implements Factory<GameState> {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int TICKET_COUNT = TICKETS.length;
+	private static final Piece[] PIECES = ScotlandYard.ALL_PIECES.toArray(new Piece[0]);
+	private static final int MRX = 0;
+	private static final int MAX_COUNT = 255;
+	// location of a piece not in the game
+	private static final int ABSENT = -1;
+
+	@Nonnull @Override public GameState build(GameSetup setup, Player mrX,
+	                                          ImmutableList<Player> detectives) {
+		MyGameStateFactory.validate(Objects.requireNonNull(setup), mrX, detectives);
+		final Game game = new Game(setup, mrX, detectives);
+		final int[] locations = new int[PIECES.length];
+		final int[] tickets = new int[PIECES.length * TICKET_COUNT];
+		Arrays.fill(locations, ABSENT);
+		int bound = game.graph.nodeBound();
+		for (Player player : players(mrX, detectives)) {
+			int index = ScotlandYard.pieceIndex(player.piece());
+			locations[index] = player.location();
+			for (Ticket ticket : TICKETS)
+				tickets[index * TICKET_COUNT + ticket.ordinal()] = player.count(ticket);
+			if (player.isDetective()) bound = Math.max(bound, player.location() + 1);
+		}
+		final long[] occupied = new long[(bound + 63) >>> 6];
+		for (Player detective : detectives) setBit(occupied, detective.location());
+		return new ArrayGameState(game, locations, tickets, occupied, 1 << MRX, ImmutableList.of(),
+				Zobrist.hash(mrX, detectives, ImmutableSet.of(MrX.MRX), ImmutableList.of()));
+	}
+
+	// What every state of one game shares
+	private static final class Game {
+		final GameSetup setup;
+		final CompiledGraph graph;
+		final MoveTable table;
+		// piece indices of the detectives, in the order given
+		final int[] detectives;
+		// bitmask over piece indices of the detectives
+		final int detectiveMask;
+		// bitmask over ticket ordinals of the tickets on each piece's board; others are never given
+		final int[] present = new int[PIECES.length];
+		// bit i is set when MrX reveals himself in round i
+		final long[] reveals;
+		final ImmutableSet<Piece> players;
+		final ImmutableSet<Piece> detectivePieces;
+
+		Game(GameSetup setup, Player mrX, ImmutableList<Player> detectives) {
+			this.setup = setup;
+			this.graph = CompiledGraph.of(setup.graph);
+			this.table = MoveTable.of(graph);
+			this.detectives = new int[detectives.size()];
+			var pieces = ImmutableSet.<Piece>builder();
+			int mask = 0;
+			for (int i = 0; i < detectives.size(); i++) {
+				this.detectives[i] = ScotlandYard.pieceIndex(detectives.get(i).piece());
+				mask |= 1 << this.detectives[i];
+				pieces.add(detectives.get(i).piece());
+			}
+			this.detectiveMask = mask;
+			this.detectivePieces = pieces.build();
+			this.players = ImmutableSet.<Piece>builder().add(mrX.piece()).addAll(detectivePieces).build();
+			for (Player player : players(mrX, detectives))
+				for (Ticket ticket : player.tickets().keySet())
+					present[ScotlandYard.pieceIndex(player.piece())] |= 1 << ticket.ordinal();
+			this.reveals = new long[(setup.moves.size() + 63) >>> 6];
+			for (int round = 0; round < setup.moves.size(); round++)
+				if (setup.moves.get(round)) reveals[round >>> 6] |= 1L << round;
+		}
+
+		LogEntry logEntry(int round, Ticket ticket, int destination) {
+			return (reveals[round >>> 6] & 1L << round) != 0
+					? table.reveal(ticket, destination)
+					: LogEntry.hidden(ticket);
+		}
+	}
+
+	private static final class ArrayGameState implements GameState {
+
+		private final Game game;
+		// [piece index], ABSENT for pieces not in the game
+		private final int[] locations;
+		// [piece index * TICKET_COUNT + ticket ordinal]
+		private final int[] tickets;
+		// bitset over node ids of all detective locations
+		private final long[] occupied;
+		// bitmask over piece indices of the pieces due to move
+		private final int remaining;
+		private final ImmutableList<LogEntry> log;
+		private final long hash;
+		// Lazily computed and memoized; null until first requested
+		private ImmutableSet<Piece> winner;
+		private ImmutableSet<Move> moves;
+
+		private ArrayGameState(Game game, int[] locations, int[] tickets, long[] occupied,
+		                       int remaining, ImmutableList<LogEntry> log, long hash) {
+			this.game = game;
+			this.locations = locations;
+			this.tickets = tickets;
+			this.occupied = occupied;
+			this.remaining = remaining;
+			this.log = log;
+			this.hash = hash;
+		}
+
+		@Nonnull @Override public GameSetup getSetup() { return game.setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return game.players; }
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			int location = locations[ScotlandYard.pieceIndex(detective)];
+			return location == ABSENT ? Optional.empty() : Optional.of(location);
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int index = ScotlandYard.pieceIndex(piece);
+			return locations[index] == ABSENT ? Optional.empty() : Optional.of(board(index));
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() { return log; }
+
+		@Override public long getZobristHash() { return hash; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			ImmutableSet<Piece> result = winner;
+			if (result == null) winner = result = determineWinner();
+			return result;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			ImmutableSet<Move> result = moves;
+			if (result == null) {
+				var builder = ImmutableSet.<Move>builder();
+				forEachMove(builder::add);
+				moves = result = builder.build();
+			}
+			return result;
+		}
+
+		@Override public void forEachMove(@Nonnull MoveSink sink) {
+			if (!getWinner().isEmpty()) return;
+			ImmutableSet<Move> known = moves;
+			if (known != null) {
+				for (Move move : known) sink.accept(move);
+				return;
+			}
+			for (int index = 0; index < PIECES.length; index++)
+				if ((remaining & 1 << index) != 0)
+					MoveGenerator.generate(game.table, occupied, PIECES[index], locations[index],
+							board(index), allowDouble(), sink);
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			return advance(MoveCodec.encode(Objects.requireNonNull(move)));
+		}
+
+		@Nonnull @Override public GameState advance(long move) {
+			final int piece = MoveCodec.pieceIndex(move);
+			if (piece >= PIECES.length || (remaining & 1 << piece) == 0
+					|| locations[piece] != MoveCodec.source(move) || !getWinner().isEmpty()
+					|| !MoveGenerator.isAvailable(game.graph, occupied, board(piece), allowDouble(), move))
+				throw new IllegalArgumentException("Illegal move: " + MoveCodec.decode(move));
+
+			final int[] newLocations = locations.clone();
+			final int[] newTickets = tickets.clone();
+			final Ticket first = MoveCodec.ticket1(move);
+			final int destination = MoveCodec.destination(move);
+			long newHash = hash ^ Zobrist.location(PIECES[piece], locations[piece])
+					^ Zobrist.location(PIECES[piece], destination);
+			newLocations[piece] = destination;
+			newHash ^= use(newTickets, piece, first);
+
+			if (piece == MRX) {
+				var newLog = ImmutableList.<LogEntry>builderWithExpectedSize(log.size() + 2).addAll(log);
+				LogEntry entry = game.logEntry(log.size(), first, MoveCodec.destination1(move));
+				newLog.add(entry);
+				newHash ^= Zobrist.logEntry(log.size(), entry);
+				if (MoveCodec.isDouble(move)) {
+					final Ticket second = MoveCodec.ticket2(move);
+					newHash ^= use(newTickets, MRX, Ticket.DOUBLE) ^ use(newTickets, MRX, second);
+					entry = game.logEntry(log.size() + 1, second, destination);
+					newLog.add(entry);
+					newHash ^= Zobrist.logEntry(log.size() + 1, entry);
+				}
+				// The detectives are all due to move after MrX, the occupancy is unchanged
+				return new ArrayGameState(game, newLocations, newTickets, occupied, game.detectiveMask,
+						newLog.build(), newHash ^ remainingDelta(remaining, game.detectiveMask));
+			}
+
+			newHash ^= give(newTickets, MRX, first);
+			final long[] newOccupied = occupied.clone();
+			clearBit(newOccupied, locations[piece]);
+			setBit(newOccupied, destination);
+
+			// MrX is next once none of the other detectives due to move can
+			int newRemaining = remaining & ~(1 << piece);
+			boolean detectivesCanMove = false;
+			for (int detective : game.detectives)
+				if ((newRemaining & 1 << detective) != 0 && MoveGenerator.hasAnyMove(game.graph,
+						newOccupied, newLocations[detective], ticketBoard(newTickets, detective))) {
+					detectivesCanMove = true;
+					break;
+				}
+			if (!detectivesCanMove) newRemaining = 1 << MRX;
+			return new ArrayGameState(game, newLocations, newTickets, newOccupied, newRemaining,
+					log, newHash ^ remainingDelta(remaining, newRemaining));
+		}
+
+		// Return the winner, checking the same conditions in the same order as MyGameStateFactory
+		private ImmutableSet<Piece> determineWinner() {
+			for (int detective : game.detectives)
+				if (locations[detective] == locations[MRX]) return game.detectivePieces;
+			final boolean mrXDue = (remaining & 1 << MRX) != 0;
+			if (mrXDue && !hasAnyMove(MRX)) return game.detectivePieces;
+			boolean detectivesCanMove = false;
+			for (int detective : game.detectives)
+				if (hasAnyMove(detective)) {
+					detectivesCanMove = true;
+					break;
+				}
+			if (!detectivesCanMove) return ImmutableSet.of(MrX.MRX);
+			if (mrXDue && log.size() == game.setup.moves.size()) return ImmutableSet.of(MrX.MRX);
+			return ImmutableSet.of();
+		}
+
+		private boolean hasAnyMove(int piece) {
+			return MoveGenerator.hasAnyMove(game.graph, occupied, locations[piece], board(piece));
+		}
+
+		private boolean allowDouble() { return game.setup.moves.size() - log.size() >= 2; }
+
+		private TicketBoard board(int piece) { return ticketBoard(tickets, piece); }
+
+		// a ticket not on the ticket board at all is not given, as in Player
+		private long give(int[] tickets, int piece, Ticket ticket) {
+			if ((game.present[piece] & 1 << ticket.ordinal()) == 0) return 0;
+			final int count = tickets[piece * TICKET_COUNT + ticket.ordinal()];
+			if (count == MAX_COUNT) throw new IllegalArgumentException("Too many " + ticket + " tickets");
+			tickets[piece * TICKET_COUNT + ticket.ordinal()] = count + 1;
+			return Zobrist.tickets(PIECES[piece], ticket, count)
+					^ Zobrist.tickets(PIECES[piece], ticket, count + 1);
+		}
+	}
+
+	private static ImmutableList<Player> players(Player mrX, ImmutableList<Player> detectives) {
+		return ImmutableList.<Player>builder().add(mrX).addAll(detectives).build();
+	}
+
+	private static TicketBoard ticketBoard(int[] tickets, int piece) {
+		return ticket -> tickets[piece * TICKET_COUNT + ticket.ordinal()];
+	}
+
+	// Take one of the ticket and return the change to the hash
+	private static long use(int[] tickets, int piece, Ticket ticket) {
+		final int count = tickets[piece * TICKET_COUNT + ticket.ordinal()]--;
+		return Zobrist.tickets(PIECES[piece], ticket, count)
+				^ Zobrist.tickets(PIECES[piece], ticket, count - 1);
+	}
+
+	// Return the change to the hash of the pieces due to move changing
+	private static long remainingDelta(int before, int after) {
+		long delta = 0;
+		for (int changed = before ^ after; changed != 0; changed &= changed - 1)
+			delta ^= Zobrist.remaining(PIECES[Integer.numberOfTrailingZeros(changed)]);
+		return delta;
+	}
+
+	private static void setBit(long[] bits, int node) { bits[node >>> 6] |= 1L << node; }
+
+	private static void clearBit(long[] bits, int node) { bits[node >>> 6] &= ~(1L << node); }
+}
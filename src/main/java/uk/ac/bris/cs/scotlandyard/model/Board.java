@@ -1,9 +1,13 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableLongArray;
 
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.Nonnull;
 
@@ -74,6 +78,64 @@ public interface Board {
 		 * {@link #getAvailableMoves()}
 		 */
 		@Nonnull GameState advance(Move move);
+		/**
+		 * Passes every move of {@link #getAvailableMoves()} to the given sink, one at a time.
+		 * Implementations may generate the moves on the fly instead of building the set.
+		 *
+		 * @param sink receives the moves
+		 */
+		default void forEachMove(@Nonnull MoveSink sink) {
+			for (Move move : getAvailableMoves()) sink.accept(move);
+		}
+		/**
+		 * @return the moves of {@link #getAvailableMoves()} packed with {@link MoveCodec}
+		 * @throws IllegalArgumentException if a move has a node out of {@link MoveCodec}'s range
+		 */
+		@Nonnull default ImmutableLongArray getAvailableMovesPacked() {
+			var builder = ImmutableLongArray.builder();
+			forEachMove(move -> builder.add(MoveCodec.encode(move)));
+			return builder.build();
+		}
+		/**
+		 * Same as {@link #advance(Move)} with the move unpacked by {@link MoveCodec}
+		 *
+		 * @param packedMove the packed move to make
+		 * @return the game state of which the given move has been made
+		 * @throws IllegalArgumentException if the move was not a move from
+		 * {@link #getAvailableMoves()}
+		 */
+		@Nonnull default GameState advance(long packedMove) {
+			return advance(MoveCodec.decode(packedMove));
+		}
+		/**
+		 * Two states of the same game with equal locations, ticket counts, pieces due to move and
+		 * travel logs have the same hash. Implementations should maintain the hash incrementally;
+		 * the default computes it from what {@link Board} exposes with {@link Zobrist#hash(Board)}.
+		 *
+		 * @return the 64 bit Zobrist hash of this state, see {@link Zobrist}
+		 */
+		default long getZobristHash() { return Zobrist.hash(this); }
+		/**
+		 * Same as {@link #children(Executor)} on the common {@link ForkJoinPool}
+		 *
+		 * @return the successor state of every move of {@link #getAvailableMoves()}
+		 */
+		@Nonnull default ImmutableMap<Move, GameState> children() {
+			return children(ForkJoinPool.commonPool());
+		}
+		/**
+		 * Advances this state with every available move. Once there are more than a few dozen
+		 * moves, as MrX often has with DOUBLE and SECRET tickets, the moves are advanced in
+		 * parallel on the given executor; implementations whose {@link #advance(Move)} is not
+		 * thread-safe must override this.
+		 *
+		 * @param executor runs the expansion when it is done in parallel
+		 * @return the successor state of every move of {@link #getAvailableMoves()}, keyed and
+		 * ordered by move
+		 */
+		@Nonnull default ImmutableMap<Move, GameState> children(@Nonnull Executor executor) {
+			return Successors.of(this, executor);
+		}
 	}
 
 
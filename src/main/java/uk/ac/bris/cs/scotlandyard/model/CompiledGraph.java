@@ -0,0 +1,375 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A read-only, primitive adjacency table of a ScotlandYard game graph in compressed sparse row
+ * form. Node ids are used directly as row indices, so the edges leaving node {@code n} are the
+ * indices {@code [start(n), end(n))}, each with a {@link #target(int)} node and a bitmask of
+ * {@link Transport} ordinals in {@link #transports(int)}.
+ * <br>
+ * Instances are cached per graph identity, use {@link #of(ImmutableValueGraph)} to obtain one.
+ * The cache holds graphs weakly and a table refers back to its graph only weakly, so neither keeps
+ * the other alive. Tables derived from a compiled graph, such as its {@link MoveTable} and
+ * {@link DistanceTable}, are held by it and live as long as it does.
+ * <br>
+ * A compiled graph can also be saved to a binary file holding the arrays as they are, which
+ * {@link #load(Path)} maps into memory and copies out in bulk, without parsing. The copy is
+ * deliberate: move generation indexes the arrays directly in its innermost loops. A loaded graph
+ * builds the {@link ImmutableValueGraph} a {@link GameSetup} needs with {@link #valueGraph()};
+ * building it costs about as much as parsing {@code graph.txt}, so the standard graph is still
+ * read from text.
+ */
+public final class CompiledGraph {
+
+	private static final ConcurrentMap<ImmutableValueGraph<Integer, ImmutableSet<Transport>>,
+			CompiledGraph> CACHE = new MapMaker().weakKeys().makeMap();
+
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final Ticket[] REQUIRED_TICKETS = new Ticket[TRANSPORTS.length];
+	static {
+		for (Transport t : TRANSPORTS) REQUIRED_TICKETS[t.ordinal()] = t.requiredTicket();
+	}
+
+	private static final int MAGIC = 0x53594347; // SYCG
+	private static final int VERSION = 1;
+	// magic, version, node bound, edge count and fingerprint
+	private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+
+	private final int[] offsets;
+	private final int[] targets;
+	private final byte[] transports;
+	// a bit per node id, set for the nodes of the graph, which need not have edges
+	private final long[] nodes;
+	// the graph compiled from, or the one built for a loaded table; weak, as the graph is the key
+	// of this table in the cache
+	private volatile WeakReference<ImmutableValueGraph<Integer, ImmutableSet<Transport>>> valueGraph =
+			new WeakReference<>(null);
+	// tables derived from this one, created on first use; fields rather than caches keyed by this
+	// table, which their references back would keep alive
+	private volatile MoveTable moveTable;
+	private volatile DistanceTable distanceTable;
+
+	private CompiledGraph(int[] offsets, int[] targets, byte[] transports, long[] nodes) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.transports = transports;
+		this.nodes = nodes;
+	}
+
+	private CompiledGraph(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int bound = 0;
+		for (int node : graph.nodes()) {
+			if (node < 0) throw new IllegalArgumentException("Negative node: " + node);
+			bound = Math.max(bound, node + 1);
+		}
+		offsets = new int[bound + 1];
+		nodes = new long[words(bound)];
+		for (int node : graph.nodes()) {
+			offsets[node + 1] = graph.degree(node);
+			nodes[node >>> 6] |= 1L << node;
+		}
+		for (int i = 0; i < bound; i++) offsets[i + 1] += offsets[i];
+		targets = new int[offsets[bound]];
+		transports = new byte[offsets[bound]];
+		for (int node : graph.nodes()) {
+			int edge = offsets[node];
+			for (int adjacent : graph.adjacentNodes(node)) {
+				int mask = 0;
+				for (Transport t : Objects.requireNonNull(
+						graph.edgeValueOrDefault(node, adjacent, ImmutableSet.of())))
+					mask |= 1 << t.ordinal();
+				targets[edge] = adjacent;
+				transports[edge++] = (byte) mask;
+			}
+		}
+		valueGraph = new WeakReference<>(graph);
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the compiled form of the given graph; compiled once and shared for as long as the
+	 * same graph instance is reachable
+	 */
+	@Nonnull public static CompiledGraph of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return CACHE.computeIfAbsent(Objects.requireNonNull(graph), CompiledGraph::new);
+	}
+
+	// Compiles an edge list of a graph with nodes 1 to count directly, each undirected edge given
+	// once with its transport mask; the value graph is built on first use like a loaded graph
+	static CompiledGraph ofEdges(int count, int edges, int[] sources, int[] targets, byte[] masks) {
+		final int bound = count + 1;
+		final int[] offsets = new int[bound + 1];
+		final long[] nodes = new long[words(bound)];
+		for (int node = 1; node < bound; node++) nodes[node >>> 6] |= 1L << node;
+		for (int i = 0; i < edges; i++) {
+			offsets[sources[i] + 1]++;
+			offsets[targets[i] + 1]++;
+		}
+		for (int i = 0; i < bound; i++) offsets[i + 1] += offsets[i];
+		final int[] next = Arrays.copyOf(offsets, bound);
+		final int[] adjacent = new int[offsets[bound]];
+		final byte[] transports = new byte[offsets[bound]];
+		for (int i = 0; i < edges; i++) {
+			int a = next[sources[i]]++, b = next[targets[i]]++;
+			adjacent[a] = targets[i];
+			adjacent[b] = sources[i];
+			transports[a] = transports[b] = masks[i];
+		}
+		return new CompiledGraph(offsets, adjacent, transports, nodes);
+	}
+
+	/**
+	 * @return one more than the largest node id in the graph
+	 */
+	public int nodeBound() { return offsets.length - 1; }
+	/**
+	 * @param node the node id
+	 * @return whether the given id is a node of the graph
+	 */
+	public boolean isNode(int node) {
+		return node >= 0 && node < nodeBound() && (nodes[node >>> 6] & 1L << node) != 0;
+	}
+	/**
+	 * @return the number of edge entries; every undirected edge is stored once per endpoint
+	 */
+	public int edgeCount() { return targets.length; }
+	/**
+	 * @param node the node
+	 * @return the index of the first edge leaving the given node
+	 */
+	public int start(int node) { return node < 0 || node >= nodeBound() ? 0 : offsets[node]; }
+	/**
+	 * @param node the node
+	 * @return one past the index of the last edge leaving the given node
+	 */
+	public int end(int node) { return node < 0 || node >= nodeBound() ? 0 : offsets[node + 1]; }
+	/**
+	 * @param edge the edge index
+	 * @return the node the given edge leads to
+	 */
+	public int target(int edge) { return targets[edge]; }
+	/**
+	 * @param edge the edge index
+	 * @return the bitmask of {@link Transport} ordinals available on the given edge
+	 */
+	public int transports(int edge) { return transports[edge]; }
+	/**
+	 * @param source the source node
+	 * @param target the target node
+	 * @return the index of the edge from source to target; -1 if the nodes are not adjacent
+	 */
+	public int edge(int source, int target) {
+		for (int edge = start(source), end = end(source); edge < end; edge++)
+			if (targets[edge] == target) return edge;
+		return -1;
+	}
+	/**
+	 * @return a 64 bit fingerprint of the adjacency table, equal for graphs with the same nodes,
+	 * edges and transports; used to check that data stored for a graph belongs to it
+	 */
+	public long fingerprint() {
+		long h = offsets.length;
+		for (int offset : offsets) h = h * 0x9e3779b97f4a7c15L + offset;
+		for (long word : nodes) h = h * 0x9e3779b97f4a7c15L + word;
+		for (int edge = 0; edge < targets.length; edge++)
+			h = h * 0x9e3779b97f4a7c15L + ((long) targets[edge] << 8 | transports[edge] & 0xff);
+		return h ^ h >>> 31;
+	}
+	/**
+	 * @param transport the {@link Transport} ordinal
+	 * @return the ticket required to travel with the given transport
+	 */
+	@Nonnull public static Ticket requiredTicket(int transport) {
+		return REQUIRED_TICKETS[transport];
+	}
+
+	/**
+	 * The graph this table was compiled from while it is reachable, otherwise a new graph with the
+	 * same nodes and edges, which shares this table through {@link #of(ImmutableValueGraph)}. A
+	 * loaded table builds its graph on first use.
+	 *
+	 * @return the game graph of this table
+	 */
+	@Nonnull public ImmutableValueGraph<Integer, ImmutableSet<Transport>> valueGraph() {
+		var graph = valueGraph.get();
+		if (graph == null) {
+			synchronized (this) {
+				graph = valueGraph.get();
+				if (graph == null) {
+					graph = buildValueGraph();
+					valueGraph = new WeakReference<>(graph);
+					CACHE.putIfAbsent(graph, this);
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * @return the move table of this graph, created on first use
+	 */
+	@Nonnull MoveTable moveTable() {
+		var table = moveTable;
+		if (table == null) {
+			synchronized (this) {
+				table = moveTable;
+				if (table == null) moveTable = table = new MoveTable(this);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @return the distance table of this graph, created on first use
+	 * @throws IllegalArgumentException if the graph has too many nodes for a table
+	 */
+	@Nonnull DistanceTable distanceTable() {
+		var table = distanceTable;
+		if (table == null) {
+			synchronized (this) {
+				table = distanceTable;
+				if (table == null) distanceTable = table = new DistanceTable(this);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @param table the distance table of this graph, replacing any created before
+	 */
+	synchronized void distanceTable(@Nonnull DistanceTable table) { distanceTable = table; }
+
+	private ImmutableValueGraph<Integer, ImmutableSet<Transport>> buildValueGraph() {
+		// One set per transport mask, shared by every edge with the same transports
+		var sets = new ArrayList<ImmutableSet<Transport>>(1 << TRANSPORTS.length);
+		for (int mask = 0; mask < 1 << TRANSPORTS.length; mask++) {
+			var set = EnumSet.noneOf(Transport.class);
+			for (Transport t : TRANSPORTS) if ((mask & 1 << t.ordinal()) != 0) set.add(t);
+			sets.add(ImmutableSet.copyOf(set));
+		}
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().expectedNodeCount(nodeBound()).build();
+		for (int node = 0; node < nodeBound(); node++) {
+			if (!isNode(node)) continue;
+			graph.addNode(node);
+			for (int edge = start(node), end = end(node); edge < end; edge++)
+				if (targets[edge] > node) graph.putEdgeValue(node, targets[edge], sets.get(transports[edge]));
+		}
+		return ImmutableValueGraph.copyOf(graph);
+	}
+
+	/**
+	 * Writes this table to the given file, replacing it atomically where the file system allows.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(@Nonnull Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			var buffer = ByteBuffer.allocate(Math.toIntExact(size(nodeBound(), edgeCount()))).order(ByteOrder.BIG_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(nodeBound()).putInt(edgeCount())
+					.putLong(fingerprint());
+			buffer.asLongBuffer().put(nodes);
+			buffer.position(buffer.position() + nodes.length * Long.BYTES);
+			buffer.asIntBuffer().put(offsets).put(targets);
+			buffer.position(buffer.position() + (offsets.length + targets.length) * Integer.BYTES);
+			buffer.put(transports).flip();
+			try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @param file a file written by {@link #save(Path)}
+	 * @return the graph saved in the given file; a new instance on every call
+	 * @throws IOException if the file cannot be read or does not hold a valid graph
+	 */
+	@Nonnull public static CompiledGraph load(@Nonnull Path file) throws IOException {
+		final MappedByteBuffer buffer;
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Not a compiled graph: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			throw new IOException("Not a compiled graph: " + file);
+		final int bound = buffer.getInt(), edges = buffer.getInt();
+		final long fingerprint = buffer.getLong();
+		if (bound < 0 || edges < 0 || size(bound, edges) != buffer.limit())
+			throw new IOException("Truncated compiled graph: " + file);
+
+		final long[] nodes = new long[words(bound)];
+		final int[] offsets = new int[bound + 1];
+		final int[] targets = new int[edges];
+		final byte[] transports = new byte[edges];
+		buffer.asLongBuffer().get(nodes);
+		buffer.position(buffer.position() + nodes.length * Long.BYTES);
+		buffer.asIntBuffer().get(offsets).get(targets);
+		buffer.position(buffer.position() + (offsets.length + targets.length) * Integer.BYTES);
+		buffer.get(transports);
+
+		final CompiledGraph graph = new CompiledGraph(offsets, targets, transports, nodes);
+		if (graph.fingerprint() != fingerprint || !graph.isWellFormed())
+			throw new IOException("Corrupt compiled graph: " + file);
+		return graph;
+	}
+
+	private static int words(int bound) { return (bound + Long.SIZE - 1) / Long.SIZE; }
+
+	// the bytes of a file holding a graph of the given size, past int range if too large
+	private static long size(int bound, int edges) {
+		return HEADER_BYTES + (long) words(bound) * Long.BYTES
+				+ ((long) bound + 1 + edges) * Integer.BYTES + edges;
+	}
+
+	private boolean isWellFormed() {
+		if (offsets[0] != 0 || offsets[offsets.length - 1] != targets.length) return false;
+		for (int node = 0; node < nodeBound(); node++)
+			if (offsets[node + 1] < offsets[node] || offsets[node + 1] > offsets[node] && !isNode(node))
+				return false;
+		for (int edge = 0; edge < targets.length; edge++)
+			if (!isNode(targets[edge])
+					|| transports[edge] < 0 || transports[edge] >= 1 << TRANSPORTS.length) return false;
+		return true;
+	}
+}
@@ -0,0 +1,191 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Streams;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+/**
+ * Enumerates the joint moves of the detectives still due to move in a round, lazily and depth
+ * first: at most one state per detective is held at a time, never the Cartesian product of their
+ * moves. Legality, including collisions and tickets, is whatever {@link GameState#advance(Move)}
+ * accepts, so a detective blocked by another one can still move into the node it vacates.
+ * <br>
+ * Detectives move one at a time, so the same joint move can be made in several orders. Only the
+ * order moving the detective with the lowest index in {@link ScotlandYard#ALL_PIECES} first
+ * whenever its move is already possible is followed, which yields every distinct joint move once.
+ * A round that ends early, by a detective landing on MrX or by the remaining detectives being
+ * stuck, yields the moves made up to that point.
+ * <br>
+ * Terminal rounds collapse: a capture is not yielded after moves of detectives with a higher
+ * index made while the capture was already possible, as the capture made before them ends the
+ * game there. The states left out differ only in where detectives stand once the detectives have
+ * won.
+ */
+public final class DetectiveRound implements Iterable<DetectiveRound.JointMove> {
+
+	/**
+	 * The moves of every detective that moved in one round and the state they lead to
+	 */
+	public static final class JointMove {
+		private final ImmutableList<Move> moves;
+		private final GameState state;
+
+		private JointMove(ImmutableList<Move> moves, GameState state) {
+			this.moves = moves;
+			this.state = state;
+		}
+
+		/**
+		 * @return the moves, in the order they were made
+		 */
+		@Nonnull public ImmutableList<Move> moves() { return moves; }
+		/**
+		 * @return the state after all the moves, with MrX to move unless the game is over
+		 */
+		@Nonnull public GameState state() { return state; }
+
+		@Override public String toString() { return "JointMove{moves=" + moves + "}"; }
+	}
+
+	private final GameState state;
+	private final Comparator<? super Move> order;
+
+	private DetectiveRound(GameState state, Comparator<? super Move> order) {
+		this.state = state;
+		this.order = order;
+	}
+
+	/**
+	 * @param state a state in which the detectives are due to move, or the game is over
+	 * @return the joint moves of the rest of the current detective round
+	 * @throws IllegalArgumentException if MrX is due to move
+	 */
+	@Nonnull public static DetectiveRound of(@Nonnull GameState state) { return of(state, null); }
+
+	/**
+	 * @param state a state in which the detectives are due to move, or the game is over
+	 * @param order the order to try the moves available at each step in, best first; null to try
+	 * them in the order of {@link GameState#getAvailableMoves()}
+	 * @return the joint moves of the rest of the current detective round
+	 * @throws IllegalArgumentException if MrX is due to move
+	 */
+	@Nonnull public static DetectiveRound of(@Nonnull GameState state,
+	                                         @Nullable Comparator<? super Move> order) {
+		for (Move move : state.getAvailableMoves())
+			if (move.commencedBy().isMrX())
+				throw new IllegalArgumentException("MrX is due to move, not the detectives");
+		return new DetectiveRound(state, order);
+	}
+
+	/**
+	 * @return a new iterator over the joint moves; empty if the game is over
+	 */
+	@Nonnull @Override public Iterator<JointMove> iterator() { return new Enumerator(); }
+
+	/**
+	 * @return a sequential stream over the joint moves
+	 */
+	@Nonnull public Stream<JointMove> stream() { return Streams.stream(this); }
+
+	private static boolean detectivesDue(GameState state) {
+		var moves = state.getAvailableMoves();
+		return !moves.isEmpty() && moves.iterator().next().commencedBy().isDetective();
+	}
+
+	private final class Enumerator implements Iterator<JointMove> {
+
+		// one frame per detective that moved so far, frame 0 being the initial state
+		private final int frames = ScotlandYard.DETECTIVES.size() + 1;
+		private final GameState[] states = new GameState[frames];
+		private final Move[][] candidates = new Move[frames][];
+		private final int[] cursors = new int[frames];
+		// the move made from each frame, with the index and source of its detective
+		private final Move[] made = new Move[frames];
+		private final int[] movers = new int[frames];
+		private final int[] sources = new int[frames];
+		private int level;
+		private JointMove next;
+
+		Enumerator() {
+			if (detectivesDue(state)) push(state);
+			else level = -1;
+		}
+
+		private void push(GameState frame) {
+			states[level] = frame;
+			Move[] moves = frame.getAvailableMoves().toArray(new Move[0]);
+			if (order != null) Arrays.sort(moves, order);
+			candidates[level] = moves;
+			cursors[level] = 0;
+		}
+
+		@Override public boolean hasNext() {
+			if (next == null) next = findNext();
+			return next != null;
+		}
+
+		@Override public JointMove next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			JointMove result = next;
+			next = null;
+			return result;
+		}
+
+		private JointMove findNext() {
+			while (level >= 0) {
+				if (cursors[level] == candidates[level].length) {
+					states[level] = null;
+					candidates[level] = null;
+					level--;
+					continue;
+				}
+				final Move move = candidates[level][cursors[level]++];
+				final int mover = ScotlandYard.pieceIndex(move.commencedBy());
+				if (!isCanonical(mover, destination(move))) continue;
+				final GameState child = states[level].advance(move);
+				made[level] = move;
+				movers[level] = mover;
+				sources[level] = move.source();
+				if (!detectivesDue(child))
+					return new JointMove(ImmutableList.copyOf(Arrays.copyOf(made, level + 1)), child);
+				level++;
+				push(child);
+			}
+			return null;
+		}
+
+		// A move is made in canonical order unless a detective with a higher index moved before it
+		// while the move was already possible: its destination must have been vacated since. The
+		// rule holds for captures too, which collapses terminal rounds
+		private boolean isCanonical(int mover, int destination) {
+			int last = -1;
+			for (int i = level - 1; i >= 0; i--)
+				if (movers[i] > mover) {
+					last = i;
+					break;
+				}
+			if (last < 0) return true;
+			for (int i = last; i < level; i++)
+				if (sources[i] == destination) return true;
+			return false;
+		}
+	}
+
+	private static int destination(Move move) {
+		return Objects.requireNonNull(move.accept(new Move.Visitor<Integer>() {
+			@Override public Integer visit(Move.SingleMove move) { return move.destination; }
+			@Override public Integer visit(Move.DoubleMove move) { return move.destination2; }
+		}));
+	}
+}
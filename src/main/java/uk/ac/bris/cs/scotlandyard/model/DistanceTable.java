@@ -0,0 +1,243 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * All-pairs hop distances of a {@link CompiledGraph}, one matrix per subset of {@link Transport}s
+ * allowed, addressed by a bitmask of transport ordinals, see {@link #mask(Transport...)}. Each
+ * matrix holds one byte per pair of node ids, so tables are meant for maps of up to a few thousand
+ * nodes; {@link ScotlandYard#standardDistances()} is the table of the standard map.
+ * <br>
+ * A matrix is computed on first use, by a breadth first search from every node run in parallel.
+ * Tables can be saved to and loaded from a binary file holding every matrix along with the
+ * {@link CompiledGraph#fingerprint()} of the graph and a CRC-32 of the file, both of which loading
+ * checks.
+ */
+public final class DistanceTable {
+
+	/**
+	 * The distance between nodes not connected with the allowed transports
+	 */
+	public static final int UNREACHABLE = -1;
+	/**
+	 * The mask allowing every transport
+	 */
+	public static final int ALL = (1 << Transport.values().length) - 1;
+
+	// the largest distance a byte holds, 0xff being unreachable
+	private static final int MAX_DISTANCE = 0xfe;
+	private static final int MAGIC = 0x53594454; // SYDT
+	private static final int VERSION = 2;
+
+	private final CompiledGraph graph;
+	private final int nodes;
+	// [mask] -> [source * nodes + target], null until first used
+	private final AtomicReferenceArray<byte[]> matrices = new AtomicReferenceArray<>(ALL + 1);
+
+	DistanceTable(CompiledGraph graph) {
+		if ((long) graph.nodeBound() * graph.nodeBound() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Graph too large for a distance table: "
+					+ graph.nodeBound() + " nodes");
+		this.graph = graph;
+		this.nodes = graph.nodeBound();
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the distance table of the given graph, shared for as long as the graph is reachable
+	 * @throws IllegalArgumentException if the graph has too many nodes for a table
+	 */
+	@Nonnull public static DistanceTable of(@Nonnull CompiledGraph graph) {
+		return Objects.requireNonNull(graph).distanceTable();
+	}
+
+	/**
+	 * @param transports the allowed transports
+	 * @return the mask of the given transports
+	 */
+	public static int mask(@Nonnull Transport... transports) {
+		int mask = 0;
+		for (Transport transport : transports) mask |= 1 << transport.ordinal();
+		return mask;
+	}
+
+	/**
+	 * @return the graph of this table
+	 */
+	@Nonnull public CompiledGraph graph() { return graph; }
+
+	/**
+	 * @param source the source node
+	 * @param target the target node
+	 * @return the fewest hops from source to target with any transport; {@link #UNREACHABLE} if
+	 * there is no path
+	 */
+	public int distance(int source, int target) { return distance(ALL, source, target); }
+
+	/**
+	 * @param mask the allowed transports, see {@link #mask(Transport...)}
+	 * @param source the source node
+	 * @param target the target node
+	 * @return the fewest hops from source to target with the allowed transports only;
+	 * {@link #UNREACHABLE} if there is no such path
+	 */
+	public int distance(int mask, int source, int target) {
+		checkNode(source);
+		checkNode(target);
+		int distance = matrix(mask)[source * nodes + target] & 0xff;
+		return distance > MAX_DISTANCE ? UNREACHABLE : distance;
+	}
+
+	private void checkNode(int node) {
+		if (node < 0 || node >= nodes) throw new IllegalArgumentException("Node out of range: " + node);
+	}
+
+	private byte[] matrix(int mask) {
+		if (mask < 0 || mask > ALL) throw new IllegalArgumentException("Invalid transport mask: " + mask);
+		byte[] matrix = matrices.get(mask);
+		if (matrix == null) {
+			// A racing thread computes the same matrix, keep whichever was published first
+			matrices.compareAndSet(mask, null, compute(mask));
+			matrix = matrices.get(mask);
+		}
+		return matrix;
+	}
+
+	private byte[] compute(int mask) {
+		final byte[] matrix = new byte[nodes * nodes];
+		IntStream.range(0, nodes).parallel().forEach(source -> search(mask, source, matrix));
+		return matrix;
+	}
+
+	// Fill the row of the given source with a breadth first search
+	private void search(int mask, int source, byte[] matrix) {
+		final int row = source * nodes;
+		Arrays.fill(matrix, row, row + nodes, (byte) 0xff);
+		final int[] queue = new int[nodes];
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		matrix[row + source] = 0;
+		while (head < tail) {
+			final int node = queue[head++];
+			final int next = (matrix[row + node] & 0xff) + 1;
+			for (int edge = graph.start(node), end = graph.end(node); edge < end; edge++) {
+				final int target = graph.target(edge);
+				if ((graph.transports(edge) & mask) == 0 || matrix[row + target] != (byte) 0xff)
+					continue;
+				if (next > MAX_DISTANCE)
+					throw new IllegalArgumentException("Distance from " + source + " exceeds " + MAX_DISTANCE);
+				matrix[row + target] = (byte) next;
+				queue[tail++] = target;
+			}
+		}
+	}
+
+	/**
+	 * Writes every matrix of this table, computing those not used yet, to the given file, followed by
+	 * a CRC-32 of everything before it. The file is written next to the given one and moved in
+	 * place, atomically where the file system allows, so readers never see a partial table.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(@Nonnull Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try {
+			final var checked = new CheckedOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)), new CRC32());
+			try (var out = new DataOutputStream(checked)) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(nodes);
+				out.writeLong(graph.fingerprint());
+				out.writeInt(ALL + 1);
+				for (int mask = 0; mask <= ALL; mask++) out.write(matrix(mask));
+				out.writeInt((int) checked.getChecksum().getValue());
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @param file a file written by {@link #save(Path)}
+	 * @param graph the graph the table was saved for
+	 * @return the loaded table, which also becomes the one {@link #of(CompiledGraph)} returns
+	 * @throws IOException if the file cannot be read, is damaged or was not saved for the given
+	 * graph
+	 */
+	@Nonnull public static DistanceTable load(@Nonnull Path file, @Nonnull CompiledGraph graph)
+			throws IOException {
+		final DistanceTable table = new DistanceTable(graph);
+		final var checked = new CheckedInputStream(
+				new BufferedInputStream(Files.newInputStream(file)), new CRC32());
+		try (var in = new DataInputStream(checked)) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a distance table: " + file);
+			if (in.readInt() != table.nodes || in.readLong() != graph.fingerprint()
+					|| in.readInt() != ALL + 1)
+				throw new IOException("Distance table " + file + " was saved for another graph");
+			for (int mask = 0; mask <= ALL; mask++) {
+				byte[] matrix = new byte[table.nodes * table.nodes];
+				in.readFully(matrix);
+				table.matrices.set(mask, matrix);
+			}
+			final int crc = (int) checked.getChecksum().getValue();
+			if (in.readInt() != crc || in.read() != -1)
+				throw new IOException("Corrupt distance table: " + file);
+		}
+		graph.distanceTable(table);
+		return table;
+	}
+
+	/**
+	 * Loads the table of the given graph from the given file if it holds one, otherwise computes
+	 * the table and tries to save it there for next time.
+	 *
+	 * @param file the cache file
+	 * @param graph the graph
+	 * @return the distance table of the given graph
+	 */
+	@Nonnull public static DistanceTable cached(@Nonnull Path file, @Nonnull CompiledGraph graph) {
+		if (Files.isRegularFile(file)) {
+			try {
+				return load(file, graph);
+			} catch (IOException e) {
+				// Stale or damaged, replaced below
+			}
+		}
+		final DistanceTable table = of(graph);
+		try {
+			table.save(file);
+		} catch (IOException e) {
+			// The table works without the cache
+		}
+		return table;
+	}
+}
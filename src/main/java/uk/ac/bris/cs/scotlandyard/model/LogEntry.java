@@ -12,12 +12,17 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
  * A POJO representing log entries of the MrX's travel log.
  * <br>
  * Use the static factory methods {@link #hidden(Ticket)} and {@link #reveal(Ticket, int)} to
- * create new instances.
+ * create new instances. Hidden entries are shared, one per ticket.
  */
 public final class LogEntry implements Serializable {
 	private static final long serialVersionUID = -6468835796153329259L;
 	// because Java's stupid Optional isn't intend to be used as a field...
 	private static final int HIDDEN = -1;
+	private static final LogEntry[] HIDDEN_ENTRIES = new LogEntry[Ticket.values().length];
+	static {
+		for (Ticket ticket : Ticket.values())
+			HIDDEN_ENTRIES[ticket.ordinal()] = new LogEntry(ticket, HIDDEN);
+	}
 	private final Ticket ticket;
 	private final int location;
 	/**
@@ -25,7 +30,7 @@ public final class LogEntry implements Serializable {
 	 * @return a log entry of a hidden round for Mrx
 	 */
 	public static LogEntry hidden(
-			@Nonnull Ticket ticket) { return new LogEntry(ticket, HIDDEN); }
+			@Nonnull Ticket ticket) { return HIDDEN_ENTRIES[ticket.ordinal()]; }
 	/**
 	 * @param ticket the ticket used in this entry
 	 * @param location the location MrX is at during this reveal round
@@ -55,5 +60,5 @@ public final class LogEntry implements Serializable {
 		LogEntry logEntry = (LogEntry) o;
 		return location == logEntry.location && ticket == logEntry.ticket;
 	}
-	@Override public int hashCode() { return Objects.hash(ticket, location); }
+	@Override public int hashCode() { return 31 * ticket.hashCode() + location; }
 }
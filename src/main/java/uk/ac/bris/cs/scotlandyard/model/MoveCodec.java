@@ -0,0 +1,158 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Encodes a {@link Move} into a single non-negative {@code long} and back. From the least
+ * significant bit, a packed move holds:
+ * <ul>
+ * <li>3 bits: the piece, as its index in {@link ScotlandYard#ALL_PIECES}</li>
+ * <li>3 bits: the first ticket ordinal</li>
+ * <li>3 bits: the second ticket ordinal plus one, zero for a {@link Move.SingleMove}</li>
+ * <li>18 bits each: the source, the first destination and the second destination</li>
+ * </ul>
+ * Nodes must therefore be in the range [0, {@value #MAX_NODE}]. Two equal moves always have the
+ * same packed value.
+ */
+public final class MoveCodec {
+
+	private MoveCodec() {}
+
+	private static final int NODE_BITS = 18;
+	/**
+	 * The largest node a packed move can hold
+	 */
+	public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+	private static final int TICKET1_SHIFT = 3;
+	private static final int TICKET2_SHIFT = 6;
+	private static final int SOURCE_SHIFT = 9;
+	private static final int DESTINATION1_SHIFT = SOURCE_SHIFT + NODE_BITS;
+	private static final int DESTINATION2_SHIFT = DESTINATION1_SHIFT + NODE_BITS;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	/**
+	 * @param piece the piece
+	 * @param source the source
+	 * @param ticket the ticket
+	 * @param destination the destination
+	 * @return the packed form of the single move with the given fields
+	 */
+	public static long single(@Nonnull Piece piece, int source, @Nonnull Ticket ticket,
+	                          int destination) {
+		return ScotlandYard.pieceIndex(piece)
+				| (long) ticket.ordinal() << TICKET1_SHIFT
+				| (long) node(source) << SOURCE_SHIFT
+				| (long) node(destination) << DESTINATION1_SHIFT;
+	}
+
+	/**
+	 * @param piece the piece
+	 * @param source the source
+	 * @param ticket1 the first ticket
+	 * @param destination1 the first destination
+	 * @param ticket2 the second ticket
+	 * @param destination2 the second destination
+	 * @return the packed form of the double move with the given fields
+	 */
+	public static long doubleMove(@Nonnull Piece piece, int source,
+	                              @Nonnull Ticket ticket1, int destination1,
+	                              @Nonnull Ticket ticket2, int destination2) {
+		return single(piece, source, ticket1, destination1)
+				| (long) (ticket2.ordinal() + 1) << TICKET2_SHIFT
+				| (long) node(destination2) << DESTINATION2_SHIFT;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the packed form of the given move
+	 * @throws IllegalArgumentException if a node of the move is out of range
+	 */
+	public static long encode(@Nonnull Move move) {
+		if (move instanceof Move.SingleMove m)
+			return single(m.commencedBy(), m.source(), m.ticket, m.destination);
+		if (move instanceof Move.DoubleMove m)
+			return doubleMove(m.commencedBy(), m.source(),
+					m.ticket1, m.destination1, m.ticket2, m.destination2);
+		throw new IllegalArgumentException("Unknown move type: " + move);
+	}
+
+	/**
+	 * @param packed the packed move
+	 * @return a new move equal to the one that was packed
+	 */
+	@Nonnull public static Move decode(long packed) {
+		if (isDouble(packed))
+			return new Move.DoubleMove(piece(packed), source(packed),
+					ticket1(packed), destination1(packed),
+					ticket2(packed), destination2(packed));
+		return new Move.SingleMove(piece(packed), source(packed),
+				ticket1(packed), destination1(packed));
+	}
+
+	/**
+	 * @param packed the packed move
+	 * @return the piece that made the move
+	 */
+	@Nonnull public static Piece piece(long packed) {
+		return ScotlandYard.ALL_PIECES.get(pieceIndex(packed));
+	}
+	/**
+	 * @param packed the packed move
+	 * @return the index in {@link ScotlandYard#ALL_PIECES} of the piece that made the move
+	 */
+	public static int pieceIndex(long packed) { return (int) (packed & 0b111); }
+	/**
+	 * @param packed the packed move
+	 * @return whether the packed move is a double move
+	 */
+	public static boolean isDouble(long packed) { return (packed >>> TICKET2_SHIFT & 0b111) != 0; }
+	/**
+	 * @param packed the packed move
+	 * @return the source of the move
+	 */
+	public static int source(long packed) { return nodeAt(packed, SOURCE_SHIFT); }
+	/**
+	 * @param packed the packed move
+	 * @return the first, or only, ticket of the move
+	 */
+	@Nonnull public static Ticket ticket1(long packed) {
+		return TICKETS[(int) (packed >>> TICKET1_SHIFT & 0b111)];
+	}
+	/**
+	 * @param packed the packed move
+	 * @return the first, or only, destination of the move
+	 */
+	public static int destination1(long packed) { return nodeAt(packed, DESTINATION1_SHIFT); }
+	/**
+	 * @param packed the packed double move
+	 * @return the second ticket of the move
+	 */
+	@Nonnull public static Ticket ticket2(long packed) {
+		if (!isDouble(packed)) throw new IllegalArgumentException("Not a double move");
+		return TICKETS[(int) (packed >>> TICKET2_SHIFT & 0b111) - 1];
+	}
+	/**
+	 * @param packed the packed double move
+	 * @return the second destination of the move
+	 */
+	public static int destination2(long packed) { return nodeAt(packed, DESTINATION2_SHIFT); }
+	/**
+	 * @param packed the packed move
+	 * @return the location of the piece after the move
+	 */
+	public static int destination(long packed) {
+		return isDouble(packed) ? destination2(packed) : destination1(packed);
+	}
+
+	private static int node(int node) {
+		if (node < 0 || node > MAX_NODE)
+			throw new IllegalArgumentException("Node out of packable range: " + node);
+		return node;
+	}
+
+	private static int nodeAt(long packed, int shift) { return (int) (packed >>> shift & MAX_NODE); }
+}
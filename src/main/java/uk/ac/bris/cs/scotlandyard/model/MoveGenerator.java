@@ -0,0 +1,187 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Generates the available moves of a player on a {@link CompiledGraph} in a single traversal:
+ * every single move is followed directly by the double moves that extend it, so first hops are
+ * visited once and no intermediate collection is built. The moves handed out are the canonical
+ * instances of the graph's {@link MoveTable}.
+ * <br>
+ * Occupancy is a bitset over node ids where every node holding a detective is set. A FERRY edge
+ * requires a SECRET ticket, which is covered by the secret move generated for every destination.
+ */
+final class MoveGenerator {
+
+	private MoveGenerator() {}
+
+	/**
+	 * @param occupied the occupancy bitset
+	 * @param node the node
+	 * @return whether the given node is occupied by a detective
+	 */
+	static boolean isOccupied(long[] occupied, int node) {
+		return (occupied[node >>> 6] & (1L << node)) != 0;
+	}
+
+	/**
+	 * Generates all single moves of the given player and, if allowed, all double moves.
+	 *
+	 * @param table the move table of the graph
+	 * @param occupied the occupancy bitset
+	 * @param player the player, moving from its current location
+	 * @param allowDouble whether enough rounds are left for a double move
+	 * @param sink receives the moves
+	 */
+	static void generate(MoveTable table, long[] occupied, Player player,
+	                     boolean allowDouble, MoveSink sink) {
+		generate(table, occupied, player.piece(), player.location(), player::count, allowDouble, sink);
+	}
+
+	/**
+	 * Generates all single moves of a piece held in any representation and, if allowed, all
+	 * double moves.
+	 *
+	 * @param table the move table of the graph
+	 * @param occupied the occupancy bitset
+	 * @param piece the piece moving
+	 * @param source the location of the piece
+	 * @param tickets the tickets of the piece
+	 * @param allowDouble whether enough rounds are left for a double move
+	 * @param sink receives the moves
+	 */
+	static void generate(MoveTable table, long[] occupied, Piece piece, int source,
+	                     TicketBoard tickets, boolean allowDouble, MoveSink sink) {
+		final CompiledGraph graph = table.graph();
+		final boolean doubles = allowDouble && tickets.getCount(Ticket.DOUBLE) != 0;
+		final boolean secret = tickets.getCount(Ticket.SECRET) != 0;
+		for (int edge = graph.start(source), end = graph.end(source); edge < end; edge++) {
+			int destination = graph.target(edge);
+			if (isOccupied(occupied, destination)) continue;
+			for (int mask = graph.transports(edge); mask != 0; mask &= mask - 1) {
+				Ticket ticket = CompiledGraph.requiredTicket(Integer.numberOfTrailingZeros(mask));
+				if (ticket != Ticket.SECRET && tickets.getCount(ticket) != 0) {
+					sink.accept(table.single(piece, source, edge, ticket));
+					if (doubles) generateSecondHops(table, occupied, piece, source, tickets,
+							edge, ticket, sink);
+				}
+			}
+			if (secret) {
+				sink.accept(table.single(piece, source, edge, Ticket.SECRET));
+				if (doubles) generateSecondHops(table, occupied, piece, source, tickets,
+						edge, Ticket.SECRET, sink);
+			}
+		}
+	}
+
+	private static void generateSecondHops(MoveTable table, long[] occupied, Piece piece,
+	                                       int source, TicketBoard tickets,
+	                                       int firstEdge, Ticket first, MoveSink sink) {
+		final CompiledGraph graph = table.graph();
+		final int middle = graph.target(firstEdge);
+		final boolean secret = tickets.getCount(Ticket.SECRET) != 0;
+		final boolean repeatable = tickets.getCount(first) >= 2;
+		for (int edge = graph.start(middle), end = graph.end(middle); edge < end; edge++) {
+			int destination = graph.target(edge);
+			if (isOccupied(occupied, destination)) continue;
+			for (int mask = graph.transports(edge); mask != 0; mask &= mask - 1) {
+				Ticket second = CompiledGraph.requiredTicket(Integer.numberOfTrailingZeros(mask));
+				if (second != Ticket.SECRET && tickets.getCount(second) != 0
+						&& (first != second || repeatable))
+					sink.accept(table.doubleMove(piece, source, firstEdge, first, edge, second));
+			}
+			if (secret && (first != Ticket.SECRET || repeatable))
+				sink.accept(table.doubleMove(piece, source,
+						firstEdge, first, edge, Ticket.SECRET));
+		}
+	}
+
+	/**
+	 * Generates the single moves of the given player along one edge leaving its location,
+	 * regardless of occupancy.
+	 *
+	 * @param table the move table of the graph
+	 * @param player the player
+	 * @param edge the edge index
+	 * @param sink receives the moves
+	 */
+	static void generateAlong(MoveTable table, Player player, int edge, MoveSink sink) {
+		for (int mask = table.graph().transports(edge); mask != 0; mask &= mask - 1) {
+			Ticket ticket = CompiledGraph.requiredTicket(Integer.numberOfTrailingZeros(mask));
+			if (ticket != Ticket.SECRET && player.has(ticket))
+				sink.accept(table.single(player.piece(), player.location(), edge, ticket));
+		}
+		if (player.has(Ticket.SECRET))
+			sink.accept(table.single(player.piece(), player.location(), edge, Ticket.SECRET));
+	}
+
+	/**
+	 * A double move always starts with a legal single move, so this stops at the first single
+	 * move found.
+	 *
+	 * @param graph the graph
+	 * @param occupied the occupancy bitset
+	 * @param player the player
+	 * @return whether the given player can make any move at all
+	 */
+	static boolean hasAnyMove(CompiledGraph graph, long[] occupied, Player player) {
+		return hasAnyMove(graph, occupied, player.location(), player::count);
+	}
+
+	/**
+	 * @param graph the graph
+	 * @param occupied the occupancy bitset
+	 * @param source the location of the piece
+	 * @param tickets the tickets of the piece
+	 * @return whether a piece at the given location holding the given tickets can make any move
+	 */
+	static boolean hasAnyMove(CompiledGraph graph, long[] occupied, int source, TicketBoard tickets) {
+		final boolean secret = tickets.getCount(Ticket.SECRET) != 0;
+		for (int edge = graph.start(source), end = graph.end(source); edge < end; edge++) {
+			if (isOccupied(occupied, graph.target(edge))) continue;
+			if (secret) return true;
+			for (int mask = graph.transports(edge); mask != 0; mask &= mask - 1)
+				if (tickets.getCount(CompiledGraph.requiredTicket(Integer.numberOfTrailingZeros(mask))) != 0)
+					return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks a packed move against the rules without generating any moves: every hop must follow
+	 * an edge to an unoccupied node with a ticket valid for it, and a double move needs a
+	 * {@link Ticket#DOUBLE}, room in the log and two of a ticket used twice.
+	 *
+	 * @param graph the graph
+	 * @param occupied the occupancy bitset
+	 * @param tickets the tickets of the piece making the move, which is at the move's source
+	 * @param allowDouble whether enough rounds are left for a double move
+	 * @param move the move packed with {@link MoveCodec}
+	 * @return whether the move is one {@link #generate} would generate
+	 */
+	static boolean isAvailable(CompiledGraph graph, long[] occupied, TicketBoard tickets,
+	                           boolean allowDouble, long move) {
+		final Ticket first = MoveCodec.ticket1(move);
+		final int middle = MoveCodec.destination1(move);
+		if (!canTravel(graph, occupied, tickets, MoveCodec.source(move), middle, first, 1))
+			return false;
+		if (!MoveCodec.isDouble(move)) return true;
+		final Ticket second = MoveCodec.ticket2(move);
+		return allowDouble && tickets.getCount(Ticket.DOUBLE) != 0
+				&& canTravel(graph, occupied, tickets, middle, MoveCodec.destination2(move),
+				second, first == second ? 2 : 1);
+	}
+
+	private static boolean canTravel(CompiledGraph graph, long[] occupied, TicketBoard tickets,
+	                                 int source, int target, Ticket ticket, int needed) {
+		if (tickets.getCount(ticket) < needed) return false;
+		final int edge = graph.edge(source, target);
+		if (edge < 0 || isOccupied(occupied, target)) return false;
+		if (ticket == Ticket.SECRET) return true;
+		for (int mask = graph.transports(edge); mask != 0; mask &= mask - 1)
+			if (CompiledGraph.requiredTicket(Integer.numberOfTrailingZeros(mask)) == ticket)
+				return true;
+		return false;
+	}
+}
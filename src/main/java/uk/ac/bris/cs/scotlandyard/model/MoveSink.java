@@ -0,0 +1,15 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives moves one at a time as they are generated, see
+ * {@link Board.GameState#forEachMove(MoveSink)}.
+ */
+@FunctionalInterface
+public interface MoveSink {
+	/**
+	 * @param move the generated move
+	 */
+	void accept(@Nonnull Move move);
+}
@@ -0,0 +1,132 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Canonical {@link Move} and {@link LogEntry} instances of one {@link CompiledGraph}, so that move
+ * generation hands out the same instance for the same move instead of allocating a new one.
+ * <br>
+ * Moves are addressed by the edge index they travel along. Instances are created on first use and
+ * published with a compare-and-set, so threads racing for the same move all receive the one
+ * instance that was published first. Double moves are only tabled for MrX as detectives never
+ * hold {@link Ticket#DOUBLE}.
+ */
+final class MoveTable {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int TICKET_COUNT = TICKETS.length;
+
+	private final CompiledGraph graph;
+	// [piece * nodeBound + source node][(edge - start(source)) * TICKET_COUNT + ticket]
+	private final AtomicReferenceArray<AtomicReferenceArray<Move.SingleMove>> singles;
+	// [first edge][((ticket1 * degree(middle)) + second edge - start(middle)) * TICKET_COUNT + ticket2]
+	private final AtomicReferenceArray<AtomicReferenceArray<Move.DoubleMove>> doubles;
+	// [ticket * nodeBound + node]
+	private final AtomicReferenceArray<LogEntry> reveals;
+
+	MoveTable(CompiledGraph graph) {
+		this.graph = graph;
+		this.singles = new AtomicReferenceArray<>(ScotlandYard.ALL_PIECES.size() * graph.nodeBound());
+		this.doubles = new AtomicReferenceArray<>(graph.edgeCount());
+		this.reveals = new AtomicReferenceArray<>(TICKET_COUNT * graph.nodeBound());
+	}
+
+	// A racing thread may publish first, in which case its value is kept and returned instead
+	private static <T> T publish(AtomicReferenceArray<T> array, int index, T value) {
+		T witness = array.compareAndExchange(index, null, value);
+		return witness == null ? value : witness;
+	}
+
+	/**
+	 * @param graph the compiled graph
+	 * @return the move table of the given graph, shared for as long as the graph is reachable
+	 */
+	@Nonnull static MoveTable of(@Nonnull CompiledGraph graph) {
+		return graph.moveTable();
+	}
+
+	/**
+	 * @return the graph the moves are tabled for
+	 */
+	@Nonnull CompiledGraph graph() { return graph; }
+
+	/**
+	 * @param piece the piece moving
+	 * @param source the node the piece moves from
+	 * @param edge the edge index leaving source
+	 * @param ticket the ticket used
+	 * @return the canonical single move
+	 */
+	@Nonnull Move.SingleMove single(Piece piece, int source, int edge, Ticket ticket) {
+		int slot = ScotlandYard.pieceIndex(piece) * graph.nodeBound() + source;
+		AtomicReferenceArray<Move.SingleMove> row = singles.get(slot);
+		if (row == null) row = publish(singles, slot,
+				new AtomicReferenceArray<>((graph.end(source) - graph.start(source)) * TICKET_COUNT));
+		int index = (edge - graph.start(source)) * TICKET_COUNT + ticket.ordinal();
+		Move.SingleMove move = row.get(index);
+		if (move == null) move = publish(row, index,
+				new Move.SingleMove(piece, source, ticket, graph.target(edge)));
+		return move;
+	}
+
+	/**
+	 * @param piece the piece moving
+	 * @param source the node the piece moves from
+	 * @param first the edge index leaving source
+	 * @param ticket1 the first ticket used
+	 * @param second the edge index leaving the first destination
+	 * @param ticket2 the second ticket used
+	 * @return the canonical double move
+	 */
+	@Nonnull Move.DoubleMove doubleMove(Piece piece, int source, int first, Ticket ticket1,
+	                                    int second, Ticket ticket2) {
+		int middle = graph.target(first);
+		if (!piece.isMrX()) return new Move.DoubleMove(piece, source,
+				ticket1, middle, ticket2, graph.target(second));
+		int degree = graph.end(middle) - graph.start(middle);
+		AtomicReferenceArray<Move.DoubleMove> row = doubles.get(first);
+		if (row == null) row = publish(doubles, first,
+				new AtomicReferenceArray<>(TICKET_COUNT * degree * TICKET_COUNT));
+		int index = ((ticket1.ordinal() * degree) + second - graph.start(middle)) * TICKET_COUNT
+				+ ticket2.ordinal();
+		Move.DoubleMove move = row.get(index);
+		if (move == null) move = publish(row, index, new Move.DoubleMove(piece, source,
+				ticket1, middle, ticket2, graph.target(second)));
+		return move;
+	}
+
+	/**
+	 * @param packed a move packed with {@link MoveCodec}
+	 * @return the canonical instance of the packed move; a new instance if the move does not
+	 * travel along edges of the graph
+	 */
+	@Nonnull Move decode(long packed) {
+		int source = MoveCodec.source(packed);
+		int first = graph.edge(source, MoveCodec.destination1(packed));
+		if (first < 0) return MoveCodec.decode(packed);
+		Piece piece = MoveCodec.piece(packed);
+		if (!MoveCodec.isDouble(packed))
+			return single(piece, source, first, MoveCodec.ticket1(packed));
+		int second = graph.edge(graph.target(first), MoveCodec.destination2(packed));
+		if (second < 0) return MoveCodec.decode(packed);
+		return doubleMove(piece, source,
+				first, MoveCodec.ticket1(packed), second, MoveCodec.ticket2(packed));
+	}
+
+	/**
+	 * @param ticket the ticket used
+	 * @param location the revealed location
+	 * @return the canonical log entry of a reveal round, see {@link LogEntry#reveal(Ticket, int)}
+	 */
+	@Nonnull LogEntry reveal(Ticket ticket, int location) {
+		if (location < 0 || location >= graph.nodeBound()) return LogEntry.reveal(ticket, location);
+		int index = ticket.ordinal() * graph.nodeBound() + location;
+		LogEntry entry = reveals.get(index);
+		if (entry == null) entry = publish(reveals, index, LogEntry.reveal(ticket, location));
+		return entry;
+	}
+}
@@ -0,0 +1,222 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * The exact set of nodes MrX could be at, kept up to date from his travel log one entry at a time
+ * rather than by replaying the whole log every turn.
+ * <br>
+ * The set is a bitset over node ids. A hidden entry moves every candidate along the edges its
+ * ticket can pay for, any edge for a SECRET ticket, a reveal replaces the set with the revealed
+ * node, and nodes occupied by detectives are removed, since MrX would have been caught there. Each
+ * step takes time proportional to the edges of the candidates and allocates nothing; the two
+ * bitsets are swapped instead.
+ * <br>
+ * Call {@link #update(Board)} whenever the board changes, so that the detectives are removed
+ * while still where MrX saw them, after both entries of a double move too.
+ */
+public final class MrXBeliefTracker {
+
+	private static final Detective[] DETECTIVES = Detective.values();
+	// [ticket ordinal] -> the mask of transport ordinals the ticket pays for
+	private static final int[] TICKET_TRANSPORTS = new int[Ticket.values().length];
+	static {
+		for (Transport t : Transport.values())
+			TICKET_TRANSPORTS[t.requiredTicket().ordinal()] |= 1 << t.ordinal();
+		TICKET_TRANSPORTS[Ticket.SECRET.ordinal()] = (1 << Transport.values().length) - 1;
+	}
+
+	private final CompiledGraph graph;
+	private long[] candidates;
+	private long[] next;
+	private int size;
+	private int consumed;
+
+	/**
+	 * @param graph the graph of the game; MrX could start at any of its nodes
+	 */
+	public MrXBeliefTracker(@Nonnull CompiledGraph graph) {
+		this.graph = Objects.requireNonNull(graph);
+		candidates = new long[(graph.nodeBound() + Long.SIZE - 1) / Long.SIZE];
+		next = new long[candidates.length];
+		reset();
+	}
+
+	/**
+	 * @param board the board of a game
+	 * @return a tracker for the game of the given board, updated with it
+	 */
+	@Nonnull public static MrXBeliefTracker of(@Nonnull Board board) {
+		var tracker = new MrXBeliefTracker(CompiledGraph.of(board.getSetup().graph));
+		tracker.catchUp(board);
+		return tracker;
+	}
+
+	/**
+	 * Forgets every log entry consumed and lets MrX be at any node of the graph.
+	 */
+	public void reset() {
+		size = 0;
+		for (int node = 0; node < graph.nodeBound(); node++)
+			if (graph.isNode(node)) {
+				candidates[node >>> 6] |= 1L << node;
+				size++;
+			} else candidates[node >>> 6] &= ~(1L << node);
+		consumed = 0;
+	}
+
+	/**
+	 * Forgets every log entry consumed and lets MrX be at the given nodes only, such as
+	 * {@link ScotlandYard#MRX_LOCATIONS}.
+	 *
+	 * @param nodes the nodes MrX could start at
+	 */
+	public void reset(@Nonnull Iterable<Integer> nodes) {
+		Arrays.fill(candidates, 0);
+		size = 0;
+		for (int node : nodes) if (graph.isNode(node)) add(candidates, node);
+		for (long word : candidates) size += Long.bitCount(word);
+		consumed = 0;
+	}
+
+	/**
+	 * Consumes the entries of MrX's travel log added since the last update, removing the
+	 * detectives' current locations after each of them. Updated on every change of the board, the
+	 * new entries are those of one turn of MrX's, during which the detectives did not move. A log
+	 * shorter than the entries already consumed means a different game, which is started over and
+	 * caught up with as in {@link #of(Board)}, filtering only the set after the last entry.
+	 *
+	 * @param board the board
+	 */
+	public void update(@Nonnull Board board) {
+		List<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() < consumed) {
+			reset();
+			catchUp(board);
+			return;
+		}
+		while (consumed < log.size()) {
+			advance(log.get(consumed));
+			excludeDetectives(board);
+		}
+		excludeDetectives(board);
+	}
+
+	// consumes the whole log; detectives may have moved since earlier entries were logged, so only
+	// the set after the last entry is filtered
+	private void catchUp(Board board) {
+		List<LogEntry> log = board.getMrXTravelLog();
+		while (consumed < log.size()) advance(log.get(consumed));
+		excludeDetectives(board);
+	}
+
+	/**
+	 * Consumes one entry of MrX's travel log.
+	 *
+	 * @param entry the next entry of the log
+	 */
+	public void advance(@Nonnull LogEntry entry) {
+		consumed++;
+		var revealed = entry.location();
+		if (revealed.isPresent()) {
+			Arrays.fill(candidates, 0);
+			size = 0;
+			if (graph.isNode(revealed.get())) {
+				add(candidates, revealed.get());
+				size = 1;
+			}
+			return;
+		}
+		final int transports = TICKET_TRANSPORTS[entry.ticket().ordinal()];
+		final long[] from = candidates, to = next;
+		Arrays.fill(to, 0);
+		for (int w = 0; w < from.length; w++)
+			for (long word = from[w]; word != 0; word &= word - 1) {
+				int node = w << 6 | Long.numberOfTrailingZeros(word);
+				for (int edge = graph.start(node), end = graph.end(node); edge < end; edge++)
+					if ((graph.transports(edge) & transports) != 0) add(to, graph.target(edge));
+			}
+		candidates = to;
+		next = from;
+		size = 0;
+		for (long word : to) size += Long.bitCount(word);
+	}
+
+	/**
+	 * Removes a node MrX cannot be at, such as one a detective stands on.
+	 *
+	 * @param node the node
+	 */
+	public void exclude(int node) {
+		if (contains(node)) {
+			candidates[node >>> 6] &= ~(1L << node);
+			size--;
+		}
+	}
+
+	private void excludeDetectives(Board board) {
+		for (Detective detective : DETECTIVES) {
+			var location = board.getDetectiveLocation(detective);
+			if (location.isPresent()) exclude(location.get());
+		}
+	}
+
+	/**
+	 * @return the number of log entries consumed
+	 */
+	public int consumed() { return consumed; }
+	/**
+	 * @return the number of nodes MrX could be at
+	 */
+	public int size() { return size; }
+	/**
+	 * @param node the node
+	 * @return whether MrX could be at the given node
+	 */
+	public boolean contains(int node) {
+		return node >= 0 && node < graph.nodeBound() && (candidates[node >>> 6] & 1L << node) != 0;
+	}
+	/**
+	 * @param from the lowest node to look at
+	 * @return the lowest node from the given one MrX could be at; -1 if there is none, so the
+	 * candidates can be walked without allocating
+	 */
+	public int nextCandidate(int from) {
+		if (from < 0) from = 0;
+		int w = from >>> 6;
+		if (w >= candidates.length) return -1;
+		long word = candidates[w] & -1L << from;
+		while (word == 0) {
+			if (++w == candidates.length) return -1;
+			word = candidates[w];
+		}
+		return w << 6 | Long.numberOfTrailingZeros(word);
+	}
+	/**
+	 * @param action the action given every node MrX could be at, in ascending order
+	 */
+	public void forEach(@Nonnull IntConsumer action) {
+		for (int node = nextCandidate(0); node != -1; node = nextCandidate(node + 1)) action.accept(node);
+	}
+	/**
+	 * @return the nodes MrX could be at
+	 */
+	@Nonnull public ImmutableSet<Integer> candidates() {
+		var builder = ImmutableSet.<Integer>builderWithExpectedSize(size);
+		forEach(builder::add);
+		return builder.build();
+	}
+
+	private static void add(long[] set, int node) { set[node >>> 6] |= 1L << node; }
+}
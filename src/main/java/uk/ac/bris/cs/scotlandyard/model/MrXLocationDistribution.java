@@ -0,0 +1,317 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A probability distribution over the node MrX is at, kept up to date from his travel log one
+ * entry at a time, the weighted counterpart of {@link MrXBeliefTracker}.
+ * <br>
+ * A hidden entry is one step of a Markov chain: from every node, MrX moves along one of the edges
+ * the entry's ticket pays for, never onto a detective, with a probability proportional to the
+ * weight a {@link MovementModel} gives the move. The step is a sparse vector-matrix product over
+ * the {@link CompiledGraph}; each node first scales its probability by its total weight, then each
+ * node sums what its neighbours send it. Both passes write one entry per node, so on maps of at
+ * least {@link #PARALLEL_THRESHOLD} nodes they run in parallel without locking. A reveal puts all
+ * of the probability on the revealed node, and after every update the detectives' nodes are
+ * cleared and the rest renormalised.
+ * <br>
+ * Every step costs time proportional to the edges of the graph, whatever the state of the game,
+ * and the probability vectors are allocated once and swapped. Call {@link #update(Board)} whenever
+ * the board changes, so that the moves are weighed while the detectives are still where MrX saw
+ * them.
+ */
+public final class MrXLocationDistribution {
+
+	/**
+	 * Decides how likely MrX is to take each move. Weights must be positive and finite, and
+	 * {@link #weight(int, int)} must be safe to call from several threads at once.
+	 */
+	public interface MovementModel {
+		/**
+		 * Called once before every hidden step, with the detectives where they are.
+		 *
+		 * @param detectives the nodes of the detectives, in the first count entries
+		 * @param count the number of detectives
+		 */
+		default void prepare(@Nonnull int[] detectives, int count) {}
+		/**
+		 * @param source the node MrX moves from
+		 * @param target the node MrX moves to
+		 * @return the relative weight of the move
+		 */
+		double weight(int source, int target);
+
+		/**
+		 * @return a model where MrX takes every move with the same probability
+		 */
+		@Nonnull static MovementModel uniform() { return (source, target) -> 1; }
+
+		/**
+		 * @param distances the distances of the game graph
+		 * @param base how many times likelier each further hop away from the closest detective
+		 * makes a move
+		 * @return a model where MrX prefers moves away from the detectives
+		 */
+		@Nonnull static MovementModel awayFromDetectives(@Nonnull DistanceTable distances,
+		                                                 double base) {
+			return new AwayFromDetectives(distances, base);
+		}
+	}
+
+	/**
+	 * The number of nodes from which a step runs in parallel
+	 */
+	public static final int PARALLEL_THRESHOLD = 4096;
+	private static final int CHUNK = 1024;
+
+	private static final Detective[] DETECTIVES = Detective.values();
+	// [ticket ordinal] -> the mask of transport ordinals the ticket pays for
+	private static final int[] TICKET_TRANSPORTS = new int[Ticket.values().length];
+	static {
+		for (Transport t : Transport.values())
+			TICKET_TRANSPORTS[t.requiredTicket().ordinal()] |= 1 << t.ordinal();
+		TICKET_TRANSPORTS[Ticket.SECRET.ordinal()] = (1 << Transport.values().length) - 1;
+	}
+
+	private final CompiledGraph graph;
+	private final MovementModel model;
+	private final int parallelThreshold;
+	private double[] probabilities;
+	private double[] next;
+	// each node's probability divided by the total weight of its moves
+	private final double[] scaled;
+	private final long[] occupied;
+	private final int[] detectives = new int[DETECTIVES.length];
+	private int detectiveCount;
+	private int consumed;
+
+	/**
+	 * @param graph the graph of the game; MrX could start at any of its nodes
+	 * @param model the movement model
+	 */
+	public MrXLocationDistribution(@Nonnull CompiledGraph graph, @Nonnull MovementModel model) {
+		this(graph, model, PARALLEL_THRESHOLD);
+	}
+
+	MrXLocationDistribution(CompiledGraph graph, MovementModel model, int parallelThreshold) {
+		this.graph = Objects.requireNonNull(graph);
+		this.model = Objects.requireNonNull(model);
+		this.parallelThreshold = parallelThreshold;
+		probabilities = new double[graph.nodeBound()];
+		next = new double[graph.nodeBound()];
+		scaled = new double[graph.nodeBound()];
+		occupied = new long[(graph.nodeBound() + Long.SIZE - 1) / Long.SIZE];
+		reset();
+	}
+
+	/**
+	 * @param board the board of a game
+	 * @param model the movement model
+	 * @return a distribution for the game of the given board, updated with it
+	 */
+	@Nonnull public static MrXLocationDistribution of(@Nonnull Board board,
+	                                                  @Nonnull MovementModel model) {
+		var distribution = new MrXLocationDistribution(
+				CompiledGraph.of(board.getSetup().graph), model);
+		distribution.update(board);
+		return distribution;
+	}
+
+	/**
+	 * Forgets every log entry consumed and spreads the probability evenly over every node.
+	 */
+	public void reset() {
+		Arrays.fill(probabilities, 0);
+		for (int node = 0; node < graph.nodeBound(); node++)
+			if (graph.isNode(node)) probabilities[node] = 1;
+		normalise();
+		consumed = 0;
+	}
+
+	/**
+	 * Forgets every log entry consumed and spreads the probability evenly over the given nodes,
+	 * such as {@link ScotlandYard#MRX_LOCATIONS}.
+	 *
+	 * @param nodes the nodes MrX could start at
+	 */
+	public void reset(@Nonnull Iterable<Integer> nodes) {
+		Arrays.fill(probabilities, 0);
+		for (int node : nodes) if (graph.isNode(node)) probabilities[node] = 1;
+		normalise();
+		consumed = 0;
+	}
+
+	/**
+	 * Consumes the entries of MrX's travel log added since the last update, with the detectives
+	 * where they are now, and then clears the detectives' nodes. A log shorter than the entries
+	 * already consumed means a different game, which is started over.
+	 *
+	 * @param board the board
+	 */
+	public void update(@Nonnull Board board) {
+		Arrays.fill(occupied, 0);
+		detectiveCount = 0;
+		for (Detective detective : DETECTIVES) {
+			var location = board.getDetectiveLocation(detective);
+			if (location.isPresent() && graph.isNode(location.get())) {
+				detectives[detectiveCount++] = location.get();
+				occupied[location.get() >>> 6] |= 1L << location.get();
+			}
+		}
+		List<LogEntry> log = board.getMrXTravelLog();
+		if (log.size() < consumed) reset();
+		while (consumed < log.size()) advance(log.get(consumed));
+		for (int i = 0; i < detectiveCount; i++) probabilities[detectives[i]] = 0;
+		normalise();
+	}
+
+	/**
+	 * Consumes one entry of MrX's travel log, with the detectives where the last
+	 * {@link #update(Board)} saw them.
+	 *
+	 * @param entry the next entry of the log
+	 */
+	public void advance(@Nonnull LogEntry entry) {
+		consumed++;
+		var revealed = entry.location();
+		if (revealed.isPresent()) {
+			Arrays.fill(probabilities, 0);
+			if (graph.isNode(revealed.get())) probabilities[revealed.get()] = 1;
+			else normalise();
+			return;
+		}
+		final int transports = TICKET_TRANSPORTS[entry.ticket().ordinal()];
+		model.prepare(detectives, detectiveCount);
+		forEachChunk(from -> scale(transports, from));
+		forEachChunk(from -> gather(transports, from));
+		final double[] swap = probabilities;
+		probabilities = next;
+		next = swap;
+		normalise();
+	}
+
+	private void forEachChunk(ChunkAction action) {
+		final int nodes = graph.nodeBound();
+		if (nodes < parallelThreshold) for (int from = 0; from < nodes; from += CHUNK) action.run(from);
+		else IntStream.range(0, (nodes + CHUNK - 1) / CHUNK).parallel()
+				.forEach(chunk -> action.run(chunk * CHUNK));
+	}
+
+	private interface ChunkAction { void run(int from); }
+
+	private void scale(int transports, int from) {
+		for (int node = from, to = Math.min(from + CHUNK, graph.nodeBound()); node < to; node++) {
+			if (probabilities[node] == 0) {
+				scaled[node] = 0;
+				continue;
+			}
+			double total = 0;
+			for (int edge = graph.start(node), end = graph.end(node); edge < end; edge++) {
+				int target = graph.target(edge);
+				if ((graph.transports(edge) & transports) != 0 && !isOccupied(target))
+					total += model.weight(node, target);
+			}
+			scaled[node] = total == 0 ? 0 : probabilities[node] / total;
+		}
+	}
+
+	private void gather(int transports, int from) {
+		for (int node = from, to = Math.min(from + CHUNK, graph.nodeBound()); node < to; node++) {
+			double sum = 0;
+			if (!isOccupied(node))
+				for (int edge = graph.start(node), end = graph.end(node); edge < end; edge++) {
+					int source = graph.target(edge);
+					if ((graph.transports(edge) & transports) != 0 && scaled[source] != 0)
+						sum += scaled[source] * model.weight(source, node);
+				}
+			next[node] = sum;
+		}
+	}
+
+	private boolean isOccupied(int node) { return (occupied[node >>> 6] & 1L << node) != 0; }
+
+	// scales the probabilities to sum to one, or spreads them evenly over the nodes without a
+	// detective if nothing is left
+	private void normalise() {
+		double total = 0;
+		for (double p : probabilities) total += p;
+		if (total == 0) {
+			for (int node = 0; node < graph.nodeBound(); node++)
+				if (graph.isNode(node) && !isOccupied(node)) probabilities[node] = 1;
+			for (double p : probabilities) total += p;
+			if (total == 0) return;
+		}
+		if (total == 1) return;
+		for (int node = 0; node < probabilities.length; node++) probabilities[node] /= total;
+	}
+
+	/**
+	 * @return the number of log entries consumed
+	 */
+	public int consumed() { return consumed; }
+	/**
+	 * @param node the node
+	 * @return the probability that MrX is at the given node
+	 */
+	public double probability(int node) {
+		return node >= 0 && node < probabilities.length ? probabilities[node] : 0;
+	}
+	/**
+	 * @return the node MrX is most likely at, the lowest on ties; -1 for an empty graph
+	 */
+	public int mostLikely() {
+		int best = -1;
+		for (int node = 0; node < probabilities.length; node++)
+			if (probabilities[node] > 0 && (best == -1 || probabilities[node] > probabilities[best]))
+				best = node;
+		return best;
+	}
+	/**
+	 * @param into the array to copy into, indexed by node, at least {@link CompiledGraph#nodeBound()}
+	 * long
+	 */
+	public void copyTo(@Nonnull double[] into) {
+		System.arraycopy(probabilities, 0, into, 0, probabilities.length);
+	}
+
+	private static final class AwayFromDetectives implements MovementModel {
+
+		// the distance every unreachable or further node counts as
+		private static final int FAR = 8;
+
+		private final DistanceTable distances;
+		private final double[] powers = new double[FAR + 1];
+		// [node] -> the weight of moving to it
+		private final double[] weights;
+
+		AwayFromDetectives(DistanceTable distances, double base) {
+			if (!(base > 0) || Double.isInfinite(base))
+				throw new IllegalArgumentException("Base must be positive and finite: " + base);
+			this.distances = distances;
+			for (int d = 0; d <= FAR; d++) powers[d] = Math.pow(base, d);
+			weights = new double[distances.graph().nodeBound()];
+		}
+
+		@Override public void prepare(@Nonnull int[] detectives, int count) {
+			for (int node = 0; node < weights.length; node++) {
+				int closest = FAR;
+				for (int i = 0; i < count; i++) {
+					int d = distances.distance(detectives[i], node);
+					if (d != DistanceTable.UNREACHABLE) closest = Math.min(closest, d);
+				}
+				weights[node] = powers[closest];
+			}
+		}
+
+		@Override public double weight(int source, int target) { return weights[target]; }
+	}
+}
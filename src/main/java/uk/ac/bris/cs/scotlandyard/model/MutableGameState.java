@@ -0,0 +1,451 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A mutable ScotlandYard game for search engines. Moves are made with {@link #doMove(long)} and
+ * taken back with {@link #undoMove()} on the same instance, instead of building a new
+ * {@link Board.GameState} for every node searched.
+ * <br>
+ * Locations, ticket counts, the travel log and the occupancy are held in primitive arrays sized on
+ * construction, and the undo stack is deep enough for a whole game, so making and unmaking moves
+ * allocates nothing. The rules are those of {@link MyGameStateFactory};
+ * {@link MutableGameStateFactory} exposes this engine as a {@link Board.GameState} so the model
+ * tests run against it too.
+ * <br>
+ * Moves are exchanged packed with {@link MoveCodec}, so nodes must be in its range. Instances are
+ * not thread-safe, and the ticket boards they hand out are live views of the current state.
+ */
+public final class MutableGameState implements Board {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int TICKET_COUNT = TICKETS.length;
+	private static final Piece[] PIECES = ScotlandYard.ALL_PIECES.toArray(new Piece[0]);
+	private static final int MRX = 0;
+	private static final int MAX_COUNT = 255;
+
+	private final GameSetup setup;
+	private final CompiledGraph graph;
+	private final MoveTable table;
+	// piece indices of the detectives, in the order given
+	private final int[] detectives;
+	// bitmask over piece indices of the detectives
+	private final int detectiveMask;
+	private final int[] locations = new int[PIECES.length];
+	// [piece index * TICKET_COUNT + ticket ordinal]
+	private final int[] tickets = new int[PIECES.length * TICKET_COUNT];
+	// bitmask over ticket ordinals of the tickets on each piece's board; others are never given
+	private final int[] present = new int[PIECES.length];
+	private final TicketBoard[] boards = new TicketBoard[PIECES.length];
+	private final long[] occupied;
+	private final LogEntry[] log;
+	private int logSize;
+	// bitmask over piece indices of the pieces due to move
+	private int remaining;
+	private long hash;
+
+	// the undo stack, one frame per move made
+	private final long[] undoMoves;
+	private final int[] undoRemaining;
+	private final long[] undoHash;
+	// whether MrX was given the ticket a detective used
+	private final boolean[] undoGiven;
+	private int depth;
+
+	// bitmask over piece indices of the winners, valid while winnerKnown
+	private int winner;
+	private boolean winnerKnown;
+
+	private final PackingSink packing = new PackingSink();
+	// computed on first use, 0 until then
+	private int maxAvailableMoves;
+
+	/**
+	 * Creates the initial state of a game, with MrX to move and an empty travel log.
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX
+	 * @param detectives the detectives
+	 * @throws IllegalArgumentException if the players or the setup do not make a valid game, as
+	 * in {@link MyGameStateFactory}
+	 */
+	public MutableGameState(@Nonnull GameSetup setup, @Nonnull Player mrX,
+	                        @Nonnull ImmutableList<Player> detectives) {
+		this(setup, mrX, detectives, ImmutableList.of(), 1 << MRX);
+	}
+
+	private MutableGameState(GameSetup setup, Player mrX, ImmutableList<Player> detectives,
+	                         ImmutableList<LogEntry> log, int remaining) {
+		MyGameStateFactory.validate(Objects.requireNonNull(setup), mrX, detectives);
+		if (log.size() > setup.moves.size())
+			throw new IllegalArgumentException("Travel log longer than the game");
+		this.setup = setup;
+		this.graph = CompiledGraph.of(setup.graph);
+		this.table = MoveTable.of(graph);
+		this.detectives = new int[detectives.size()];
+		int mask = 0, bound = graph.nodeBound();
+		for (int i = 0; i < detectives.size(); i++) {
+			Player detective = detectives.get(i);
+			this.detectives[i] = ScotlandYard.pieceIndex(detective.piece());
+			mask |= 1 << this.detectives[i];
+			load(this.detectives[i], detective);
+			bound = Math.max(bound, detective.location() + 1);
+		}
+		this.detectiveMask = mask;
+		load(MRX, mrX);
+		this.occupied = new long[(bound + 63) >>> 6];
+		for (Player detective : detectives) setBit(detective.location());
+		this.log = log.toArray(new LogEntry[setup.moves.size()]);
+		this.logSize = log.size();
+		this.remaining = remaining;
+		var pieces = ImmutableSet.<Piece>builder();
+		for (int i = 0; i < PIECES.length; i++)
+			if ((remaining & 1 << i) != 0) pieces.add(PIECES[i]);
+		this.hash = Zobrist.hash(mrX, detectives, pieces.build(), log);
+		// MrX moves at most once per entry of the log, and every detective at most once after each
+		final int capacity = setup.moves.size() * (detectives.size() + 1);
+		this.undoMoves = new long[capacity];
+		this.undoRemaining = new int[capacity];
+		this.undoHash = new long[capacity];
+		this.undoGiven = new boolean[capacity];
+	}
+
+	/**
+	 * Creates a game at the state the given board shows. A {@link Board} hides MrX's location, so
+	 * it has to be supplied; the pieces due to move are taken to be those with available moves,
+	 * and MrX when there are none. Every ticket is taken to be on every ticket board.
+	 *
+	 * @param board the board
+	 * @param mrXLocation the location of MrX
+	 * @return a new game at the state of the given board
+	 * @throws IllegalArgumentException if the board does not show a valid game
+	 */
+	@Nonnull public static MutableGameState of(@Nonnull Board board, int mrXLocation) {
+		Player mrX = null;
+		var detectives = ImmutableList.<Player>builder();
+		for (Piece piece : board.getPlayers()) {
+			TicketBoard ticketBoard = board.getPlayerTickets(piece).orElseThrow();
+			var counts = ImmutableMap.<Ticket, Integer>builder();
+			for (Ticket ticket : TICKETS) counts.put(ticket, ticketBoard.getCount(ticket));
+			if (piece.isMrX()) mrX = new Player(piece, counts.build(), mrXLocation);
+			else detectives.add(new Player(piece, counts.build(),
+					board.getDetectiveLocation((Detective) piece).orElseThrow()));
+		}
+		int remaining = 0;
+		for (Move move : board.getAvailableMoves())
+			remaining |= 1 << ScotlandYard.pieceIndex(move.commencedBy());
+		return new MutableGameState(board.getSetup(), mrX, detectives.build(),
+				board.getMrXTravelLog(), remaining == 0 ? 1 << MRX : remaining);
+	}
+
+	private void load(int index, Player player) {
+		locations[index] = player.location();
+		for (Ticket ticket : TICKETS)
+			tickets[index * TICKET_COUNT + ticket.ordinal()] = player.count(ticket);
+		for (Ticket ticket : player.tickets().keySet())
+			present[index] |= 1 << ticket.ordinal();
+		boards[index] = ticket -> tickets[index * TICKET_COUNT + ticket.ordinal()];
+	}
+
+	@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+	@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
+		var players = ImmutableSet.<Piece>builder().add(MrX.MRX);
+		for (int detective : detectives) players.add(PIECES[detective]);
+		return players.build();
+	}
+
+	@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+		int index = ScotlandYard.pieceIndex(detective);
+		return (detectiveMask & 1 << index) != 0 ? Optional.of(locations[index]) : Optional.empty();
+	}
+
+	/**
+	 * @param piece the player piece
+	 * @return a live view of the ticket board of the given player; empty if the player is not
+	 * part of the game
+	 */
+	@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+		int index = ScotlandYard.pieceIndex(piece);
+		return index == MRX || (detectiveMask & 1 << index) != 0
+				? Optional.of(boards[index]) : Optional.empty();
+	}
+
+	@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+		return ImmutableList.copyOf(Arrays.copyOf(log, logSize));
+	}
+
+	@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+		int winners = winnerMask();
+		if (winners == 0) return ImmutableSet.of();
+		if (winners == 1 << MRX) return ImmutableSet.of(MrX.MRX);
+		var pieces = ImmutableSet.<Piece>builder();
+		for (int detective : detectives) pieces.add(PIECES[detective]);
+		return pieces.build();
+	}
+
+	@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+		var moves = ImmutableSet.<Move>builder();
+		forEachMove(moves::add);
+		return moves.build();
+	}
+
+	/**
+	 * @return the location of MrX, which a {@link Board} does not expose
+	 */
+	public int getMrXLocation() { return locations[MRX]; }
+
+	/**
+	 * @return the Zobrist hash of the current state, equal to that of a {@link Board.GameState}
+	 * of {@link MyGameStateFactory} in the same state
+	 */
+	public long getZobristHash() { return hash; }
+
+	/**
+	 * @return the number of moves made and not undone
+	 */
+	public int depth() { return depth; }
+
+	/**
+	 * @return whether the game has a winner
+	 */
+	public boolean isGameOver() { return winnerMask() != 0; }
+
+	/**
+	 * Passes every available move to the given sink, one at a time; none once the game is over.
+	 *
+	 * @param sink receives the moves
+	 */
+	public void forEachMove(@Nonnull MoveSink sink) {
+		if (isGameOver()) return;
+		final boolean allowDouble = setup.moves.size() - logSize >= 2;
+		if ((remaining & 1 << MRX) != 0)
+			MoveGenerator.generate(table, occupied, MrX.MRX, locations[MRX], boards[MRX],
+					allowDouble, sink);
+		else for (int detective : detectives)
+			if ((remaining & 1 << detective) != 0)
+				MoveGenerator.generate(table, occupied, PIECES[detective], locations[detective],
+						boards[detective], allowDouble, sink);
+	}
+
+	/**
+	 * Writes the available moves, packed with {@link MoveCodec}, to the start of the given buffer.
+	 *
+	 * @param buffer receives the moves
+	 * @return the number of moves written
+	 * @throws IndexOutOfBoundsException if the buffer is too small, which one of
+	 * {@link #maxAvailableMoves()} never is
+	 */
+	public int availableMoves(@Nonnull long[] buffer) {
+		packing.buffer = buffer;
+		packing.size = 0;
+		forEachMove(packing);
+		packing.buffer = null;
+		return packing.size;
+	}
+
+	/**
+	 * @return an upper bound on the number of moves {@link #availableMoves(long[])} writes in any
+	 * state of this game
+	 */
+	public int maxAvailableMoves() {
+		if (maxAvailableMoves == 0) {
+			// an edge carries a move per ticket of its transports and a secret move
+			long singles = 0;
+			for (int node = 0; node < graph.nodeBound(); node++) {
+				long moves = 0;
+				for (int edge = graph.start(node), end = graph.end(node); edge < end; edge++)
+					moves += Integer.bitCount(graph.transports(edge)) + 1;
+				singles = Math.max(singles, moves);
+			}
+			// MrX's single and double moves, or one single move of every detective
+			maxAvailableMoves = (int) Math.min(Integer.MAX_VALUE - 8,
+					Math.max(singles * (singles + 1), singles * detectives.length));
+		}
+		return maxAvailableMoves;
+	}
+
+	/**
+	 * @param move the packed move
+	 * @return whether the given move is one of the available moves
+	 */
+	public boolean isLegal(long move) {
+		final int piece = MoveCodec.pieceIndex(move);
+		if (piece >= PIECES.length || (remaining & 1 << piece) == 0 || isGameOver()) return false;
+		if (locations[piece] != MoveCodec.source(move)) return false;
+		return MoveGenerator.isAvailable(graph, occupied, boards[piece],
+				setup.moves.size() - logSize >= 2, move);
+	}
+
+	/**
+	 * Same as {@link #doMove(long)} with the move packed by {@link MoveCodec}
+	 *
+	 * @param move the move to make
+	 */
+	public void doMove(@Nonnull Move move) { doMove(MoveCodec.encode(move)); }
+
+	/**
+	 * Makes the given move, leaving the state unchanged if it is not legal.
+	 *
+	 * @param move the packed move to make
+	 * @throws IllegalArgumentException if the move is not one of the available moves
+	 */
+	public void doMove(long move) {
+		if (!isLegal(move))
+			throw new IllegalArgumentException("Illegal move: " + MoveCodec.decode(move));
+		if (depth == undoMoves.length) throw new IllegalStateException("Undo stack is full");
+		undoMoves[depth] = move;
+		undoRemaining[depth] = remaining;
+		undoHash[depth] = hash;
+		final int piece = MoveCodec.pieceIndex(move);
+		final Ticket first = MoveCodec.ticket1(move);
+		if (piece == MRX) {
+			use(MRX, first);
+			appendLog(first, MoveCodec.destination1(move));
+			if (MoveCodec.isDouble(move)) {
+				final Ticket second = MoveCodec.ticket2(move);
+				use(MRX, Ticket.DOUBLE);
+				use(MRX, second);
+				appendLog(second, MoveCodec.destination2(move));
+			}
+			moveTo(MRX, MoveCodec.destination(move));
+			setRemaining(detectiveMask);
+		} else {
+			use(piece, first);
+			undoGiven[depth] = give(MRX, first);
+			clearBit(locations[piece]);
+			moveTo(piece, MoveCodec.destination1(move));
+			setBit(locations[piece]);
+			// MrX is next once none of the other detectives due to move can
+			final int next = remaining & ~(1 << piece);
+			setRemaining(anyCanMove(next) ? next : 1 << MRX);
+		}
+		depth++;
+		winnerKnown = false;
+	}
+
+	/**
+	 * Takes back the last move made.
+	 *
+	 * @throws IllegalStateException if no move is left to take back
+	 */
+	public void undoMove() {
+		if (depth == 0) throw new IllegalStateException("No move to undo");
+		final long move = undoMoves[--depth];
+		final int piece = MoveCodec.pieceIndex(move);
+		final Ticket first = MoveCodec.ticket1(move);
+		tickets[piece * TICKET_COUNT + first.ordinal()]++;
+		if (piece == MRX) {
+			if (MoveCodec.isDouble(move)) {
+				tickets[MRX * TICKET_COUNT + Ticket.DOUBLE.ordinal()]++;
+				tickets[MRX * TICKET_COUNT + MoveCodec.ticket2(move).ordinal()]++;
+				logSize -= 2;
+			} else logSize--;
+			locations[MRX] = MoveCodec.source(move);
+		} else {
+			if (undoGiven[depth]) tickets[MRX * TICKET_COUNT + first.ordinal()]--;
+			clearBit(locations[piece]);
+			locations[piece] = MoveCodec.source(move);
+			setBit(locations[piece]);
+		}
+		remaining = undoRemaining[depth];
+		hash = undoHash[depth];
+		winnerKnown = false;
+	}
+
+	private int count(int piece, Ticket ticket) { return tickets[piece * TICKET_COUNT + ticket.ordinal()]; }
+
+	private void use(int piece, Ticket ticket) {
+		final int index = piece * TICKET_COUNT + ticket.ordinal();
+		final int count = tickets[index]--;
+		hash ^= Zobrist.tickets(PIECES[piece], ticket, count)
+				^ Zobrist.tickets(PIECES[piece], ticket, count - 1);
+	}
+
+	// a ticket not on the ticket board at all is not given, as in Player
+	private boolean give(int piece, Ticket ticket) {
+		if ((present[piece] & 1 << ticket.ordinal()) == 0) return false;
+		final int index = piece * TICKET_COUNT + ticket.ordinal();
+		final int count = tickets[index];
+		if (count == MAX_COUNT) throw new IllegalArgumentException("Too many " + ticket + " tickets");
+		tickets[index] = count + 1;
+		hash ^= Zobrist.tickets(PIECES[piece], ticket, count)
+				^ Zobrist.tickets(PIECES[piece], ticket, count + 1);
+		return true;
+	}
+
+	private void moveTo(int piece, int destination) {
+		hash ^= Zobrist.location(PIECES[piece], locations[piece])
+				^ Zobrist.location(PIECES[piece], destination);
+		locations[piece] = destination;
+	}
+
+	private void appendLog(Ticket ticket, int destination) {
+		final LogEntry entry = MyGameStateFactory.logEntry(table, setup, logSize, ticket, destination);
+		hash ^= Zobrist.logEntry(logSize, entry);
+		log[logSize++] = entry;
+	}
+
+	private void setRemaining(int next) {
+		for (int changed = remaining ^ next; changed != 0; changed &= changed - 1)
+			hash ^= Zobrist.remaining(PIECES[Integer.numberOfTrailingZeros(changed)]);
+		remaining = next;
+	}
+
+	private boolean hasAnyMove(int piece) {
+		return MoveGenerator.hasAnyMove(graph, occupied, locations[piece], boards[piece]);
+	}
+
+	// whether any detective in the given bitmask can move
+	private boolean anyCanMove(int pieces) {
+		for (int detective : detectives)
+			if ((pieces & 1 << detective) != 0 && hasAnyMove(detective)) return true;
+		return false;
+	}
+
+	private int winnerMask() {
+		if (!winnerKnown) {
+			winner = determineWinner();
+			winnerKnown = true;
+		}
+		return winner;
+	}
+
+	// the same conditions, in the same order, as MyGameStateFactory
+	private int determineWinner() {
+		for (int detective : detectives)
+			if (locations[detective] == locations[MRX]) return detectiveMask;
+		final boolean mrXDue = (remaining & 1 << MRX) != 0;
+		if (mrXDue && !hasAnyMove(MRX)) return detectiveMask;
+		if (!anyCanMove(detectiveMask)) return 1 << MRX;
+		if (mrXDue && logSize == setup.moves.size()) return 1 << MRX;
+		return 0;
+	}
+
+	private void setBit(int node) { occupied[node >>> 6] |= 1L << node; }
+
+	private void clearBit(int node) { occupied[node >>> 6] &= ~(1L << node); }
+
+	private static final class PackingSink implements MoveSink {
+		long[] buffer;
+		int size;
+
+		@Override public void accept(@Nonnull Move move) {
+			if (size == buffer.length)
+				throw new IndexOutOfBoundsException("Move buffer too small: " + buffer.length);
+			buffer[size++] = MoveCodec.encode(move);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Builds {@link GameState}s backed by one {@link MutableGameState} per game. Every state of a game
+ * is a node in the tree of moves made from its initial state; querying a state moves the shared
+ * engine there by undoing moves up to the common ancestor and redoing the moves down from it.
+ * <br>
+ * This runs the make/unmake engine under the persistent {@link GameState} contract, so the same
+ * tests verify both; it is not meant to be fast. The states of one game must not be used from
+ * several threads at once.
+ */
+public final class MutableGameStateFactory implements Factory<GameState> {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	@Nonnull @Override public GameState build(GameSetup setup, Player mrX,
+	                                          ImmutableList<Player> detectives) {
+		var game = new Game(new MutableGameState(setup, mrX, detectives));
+		return game.current = new Snapshot(game, null, 0);
+	}
+
+	private static final class Game {
+		final MutableGameState engine;
+		// the state the engine is currently in
+		Snapshot current;
+
+		Game(MutableGameState engine) { this.engine = engine; }
+	}
+
+	private static final class Snapshot implements GameState {
+
+		private final Game game;
+		private final Snapshot parent;
+		// the packed move made from the parent
+		private final long move;
+		private final int depth;
+		private final long hash;
+		// Memoized on first access, the engine moves on
+		private ImmutableSet<Piece> winner;
+		private ImmutableSet<Move> moves;
+		private ImmutableList<LogEntry> log;
+
+		private Snapshot(Game game, Snapshot parent, long move) {
+			this.game = game;
+			this.parent = parent;
+			this.move = move;
+			this.depth = parent == null ? 0 : parent.depth + 1;
+			this.hash = game.engine.getZobristHash();
+		}
+
+		// Move the engine to this state and return it
+		private MutableGameState engine() {
+			final MutableGameState engine = game.engine;
+			Snapshot at = game.current;
+			if (at == this) return engine;
+			var redo = new ArrayDeque<Snapshot>();
+			Snapshot target = this;
+			while (at.depth > target.depth) {
+				engine.undoMove();
+				at = at.parent;
+			}
+			while (target.depth > at.depth) {
+				redo.push(target);
+				target = target.parent;
+			}
+			while (at != target) {
+				engine.undoMove();
+				at = at.parent;
+				redo.push(target);
+				target = target.parent;
+			}
+			while (!redo.isEmpty()) engine.doMove(redo.pop().move);
+			game.current = this;
+			return engine;
+		}
+
+		@Nonnull @Override public GameSetup getSetup() { return game.engine.getSetup(); }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() {
+			return game.engine.getPlayers();
+		}
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			return engine().getDetectiveLocation(detective);
+		}
+
+		// Copy the ticket board, the engine's boards are live views
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			return engine().getPlayerTickets(piece).map(board -> {
+				var counts = ImmutableMap.<Ticket, Integer>builder();
+				for (Ticket ticket : TICKETS) counts.put(ticket, board.getCount(ticket));
+				ImmutableMap<Ticket, Integer> copy = counts.build();
+				return ticket -> copy.get(ticket);
+			});
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+			ImmutableList<LogEntry> result = log;
+			if (result == null) log = result = engine().getMrXTravelLog();
+			return result;
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			ImmutableSet<Piece> result = winner;
+			if (result == null) winner = result = engine().getWinner();
+			return result;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			ImmutableSet<Move> result = moves;
+			if (result == null) moves = result = engine().getAvailableMoves();
+			return result;
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			return advance(MoveCodec.encode(Objects.requireNonNull(move)));
+		}
+
+		@Nonnull @Override public GameState advance(long packedMove) {
+			engine().doMove(packedMove);
+			return game.current = new Snapshot(game, this, packedMove);
+		}
+
+		@Override public long getZobristHash() { return hash; }
+
+		// The engine is shared by every state of the game, so expand one move at a time
+		@Nonnull @Override public ImmutableMap<Move, GameState> children(@Nonnull Executor executor) {
+			var children = ImmutableMap.<Move, GameState>builder();
+			for (Move move : getAvailableMoves()) children.put(move, advance(move));
+			return children.build();
+		}
+	}
+}
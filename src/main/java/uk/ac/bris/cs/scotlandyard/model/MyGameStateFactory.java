@@ -2,8 +2,8 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableLongArray;
 import java.util.*;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
 import uk.ac.bris.cs.scotlandyard.model.Piece.*;
@@ -17,12 +17,24 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		// START ATTRIBUTES
 
 		private GameSetup setup;
+		private CompiledGraph graph;
+		private MoveTable table;
 		private ImmutableSet<Piece> remaining;
 		private ImmutableList<LogEntry> log;
 		private Player mrX;
 		private List<Player> detectives;
+		// Lazily computed and memoized; null until first requested. Both are immutable, so a
+		// racing computation from another thread just produces an equal value
 		private ImmutableSet<Move> moves;
 		private ImmutableSet<Piece> winner;
+		private ImmutableLongArray packedMoves;
+		// Memoized moves of each player indexed by pieceIndex, null until first requested. Entries of
+		// detectives that did not move are carried over to, and patched in, the next state
+		private final ImmutableSet<Move>[] pieceMoves;
+		// Bitset over node ids of all detective locations, never modified once the state is constructed
+		private final long[] occupied;
+		// Zobrist hash of this state, computed from scratch by build and updated incrementally by advance
+		private final long hash;
 		// END ATTRIBUTES
 
 		// START CONSTRUCTOR
@@ -33,118 +45,30 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				final ImmutableSet<Piece> remaining,
 				final ImmutableList<LogEntry> log,
 				final Player mrX,
-				final List<Player> detectives){
+				final List<Player> detectives,
+				final ImmutableSet<Move>[] pieceMoves,
+				final long[] occupied,
+				final long hash){
 
-				// START CHECKS
-
-				// Check if Mrx is null
-				if (Objects.isNull(mrX))
-					throw new NullPointerException("Mr X is null!");
-
-				// Check if detectives is null
-				if (Objects.isNull(detectives))
-					throw new NullPointerException("Detectives is null!");
-
-				// Check if Mrx exists
-				if (!mrX.piece().isMrX())
-					throw new IllegalArgumentException("No mrX!");
-
-				// Check if there are more than one Mrx or if detectives and mrX have been swapped
-				for (Player detective : detectives)
-					if (detective.piece().isMrX())
-						throw new IllegalArgumentException("More than one Mr X or swapped Mr X!");
-
-				// Check if there are more than one of the same detective
-				final Set<Player> detectiveHashSet = new HashSet<>();
-				for (Player detective : detectives)
-					if (!detectiveHashSet.add(detective))
-						throw new IllegalArgumentException("Duplicate detective!");
-
-				// Check if there are more than one of the same detective
-				final Set<Integer> detectiveLocationHashSet = new HashSet<>();
-				for (Player detective : detectives)
-					if (!detectiveLocationHashSet.add(detective.location()))
-						throw new IllegalArgumentException("Detective location overlap!");
-
-				// Check if the detectives have the secret ticket
-				for (Player detective : detectives)
-					if (detective.tickets().getOrDefault(Ticket.SECRET,0) != 0)
-						throw new IllegalArgumentException("Detectives have the secret ticket!");
-
-				// Check if the detectives have the double ticket
-				for (Player detective : detectives)
-					if (detective.tickets().getOrDefault(Ticket.DOUBLE,0) != 0)
-						throw new IllegalArgumentException("Detectives have the double ticket!");
-
-				// Check if moves is empty
-				if(setup.moves.isEmpty())
-					throw new IllegalArgumentException("Empty moves!");
-
-				// Check if graph is empty
-				if (setup.graph.nodes().isEmpty())
-					throw new IllegalArgumentException("Empty graph!");
-
-				// END CHECKS
+				// The players and the setup are validated once by build, every later state is derived by advance,
+				// which keeps them valid; see DEBUG to check them on every transition anyway
 
 				// Initialised the local attributes
 				this.setup      = setup;
+				this.graph      = CompiledGraph.of(setup.graph);
+				this.table      = MoveTable.of(graph);
 				this.remaining  = remaining;
 				this.log        = log;
 				this.mrX        = mrX;
 				this.detectives = detectives;
+				this.pieceMoves = pieceMoves;
+				this.occupied   = occupied;
+				this.hash       = hash;
 
-				// START DETERMINE WINNER
-
-				// Store all detective pieces for return winners after end game conditions check
-				ArrayList<Piece> allDetectives = (ArrayList<Piece>) detectives.stream().filter(Player::isDetective).map(Player::piece).collect(Collectors.toList());
-
-				// The detectives win, if:
-				// A detective finish a move on the same station as Mr X.
-				if(detectives.stream().anyMatch(p -> p.location() == mrX.location())){
-
-					winner =  ImmutableSet.copyOf(allDetectives);
-					moves  = ImmutableSet.of();
-				}
-				// There are no unoccupied stations for Mr X to travel to.
-				else if(movesOf(List.of(mrX)).isEmpty() && remaining.contains(MrX.MRX)){
-
-					winner = ImmutableSet.copyOf(allDetectives);
-					moves  = ImmutableSet.of();
-				}
-				// Mr X wins, if:
-				// Mr X manages to fill the log and the detectives subsequently fail to catch him with their final moves.
-				else if(movesOf(detectives).isEmpty() ) {
-
-					winner = ImmutableSet.of(MrX.MRX);
-					moves  = ImmutableSet.of();
-				}
-				// The detectives can no longer move any of their playing pieces.
-				else if(remaining.contains(MrX.MRX) && log.size() == setup.moves.size()) {
-
-					winner = ImmutableSet.of(MrX.MRX);
-					moves  = ImmutableSet.of();
-				}
-				// End game conditions not met
-				else{
-
-					// No winner returned
-					winner = ImmutableSet.of();
-					// No winner returned
-
-					// Store of SingleMove and DoubleMove generated
-					final var allMoves = new ArrayList<Move>();
+				if (DEBUG) verifyInvariants();
 
-					// Generate SingleMove and DounbleMove of remaining players
-					for(Piece temp : remaining) {
-						Player player = playerFromPiece(temp);
-						allMoves.addAll(makeSingleMoves(setup, detectives,player, player.location()));
-						allMoves.addAll(makeDoubleMoves(setup, detectives,player, player.location()));
-					}
-
-					// Return available moves of remaining players
-					moves = ImmutableSet.copyOf(allMoves);
-				}
-				// END DETERMINE WINNER
+				// The winner and the available moves are computed on first access, see getWinner
+				// and getAvailableMoves, as most intermediate states are never asked for either
 		}
 		// END CONSTRUCTOR
 
@@ -207,7 +131,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				// Return tickets of stored player
 				@Override
 				public int getCount(@Nonnull Ticket ticket) {
-					return finalFoundPiece.tickets().getOrDefault(ticket, 0);
+					return finalFoundPiece.count(ticket);
 				}
 			};
 
@@ -229,8 +153,9 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Override
 		public GameState advance(Move move) {
 
-			// Check is that the provided move is indeed valid
-			if(!moves.contains(move)) throw new IllegalArgumentException("Illegal move: "+move);
+			// Check is that the provided move is indeed valid, only generating the moves of the piece that made it
+			if(!getWinner().isEmpty() || !remaining.contains(move.commencedBy()) || !movesOf(move.commencedBy()).contains(move))
+				throw new IllegalArgumentException("Illegal move: "+move);
 
 			// Store current mrX
 			Player newMrX = mrX;
@@ -243,17 +168,10 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			if(move.commencedBy().isMrX()) {
 
 				// Store existing log for MyGameState
-				var newLog = new ArrayList<LogEntry>(log);
-
-				// Get detective pieces for MyGameState
-				List<Piece> allDetectives = detectives
-						.stream()
-						.filter(p -> p.isDetective())
-						.map(p -> p.piece())
-						.collect(Collectors.toList());
+				var newLog = ImmutableList.<LogEntry>builderWithExpectedSize(log.size() + 2).addAll(log);
 
 				// Add their move(s) to the log
-				newLog.addAll(logEntriesAfterMove(setup, log, move));
+				logEntriesAfterMove(table, setup, log, move, newLog);
 
 				//Take the used ticket(s) away from Mr X
 				newMrX = newMrX.use(ticketsUsedAfterMove(move));
@@ -261,183 +179,382 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				// Move Mr X's position to their new destination
 				newMrX = newMrX.at(newLocation);
 
+				// Mr X's move does not change the detectives' moves, so keep them for the detectives turn
+				ImmutableSet<Move>[] newPieceMoves = pieceMoves.clone();
+				newPieceMoves[MRX_INDEX] = null;
+
+				// Update the hash with Mr X's new location and tickets, the new log entries, and the swap of turns
+				ImmutableList<LogEntry> updatedLog = newLog.build();
+				ImmutableSet<Piece> newRemaining = allDetectives();
+				long newHash = hash ^ Zobrist.delta(mrX, newMrX) ^ Zobrist.remaining(MrX.MRX);
+				for (Piece piece : newRemaining) newHash ^= Zobrist.remaining(piece);
+				for (int i = log.size(); i < updatedLog.size(); i++) newHash ^= Zobrist.logEntry(i, updatedLog.get(i));
+
 				// Swap to the detectives turn
 				// Advancement of the GameState
-				return new MyGameState(setup, ImmutableSet.copyOf(allDetectives), ImmutableList.copyOf(newLog), newMrX, detectives);
+				return new MyGameState(setup, newRemaining, updatedLog, newMrX, detectives, newPieceMoves, occupied, newHash);
 			}
 			// If it's the detectives' turn
 			else {
 
-				// Store detective who made move
-				Player newDetective = playerFromPiece(move.commencedBy());
-
-				// Store list of detectives who did not make a move
-				Player finalNewDetective = newDetective;
-				List<Player> newDetectives = detectives
-						.stream()
-						.filter(detective -> detective != finalNewDetective)
-						.collect(Collectors.toList());
+				// Find the detective who made move, only their entry changes
+				int moved = 0;
+				while (detectives.get(moved).piece() != move.commencedBy()) moved++;
+				Player oldDetective = detectives.get(moved);
 
 				// Move the detective to their new destination
-				newDetective = newDetective.at(newLocation);
-
 				// Take the used ticket from the detective and give it to Mr X
 				Iterable<Ticket> usedTickets = move.tickets();
-				newDetective = newDetective.use(usedTickets);
+				Player newDetective = oldDetective.at(newLocation).use(usedTickets);
 				newMrX = mrX.give(usedTickets);
 
-				// Ensure that particular detective won't move again this round
-				newDetectives.add(newDetective);
+				var newDetectives = new ArrayList<Player>(detectives);
+				newDetectives.set(moved, newDetective);
+
+				// Update the occupancy, sharing nothing with this state
+				long[] newOccupied = occupied.clone();
+				clearBit(newOccupied, oldDetective.location());
+				setBit(newOccupied, newLocation);
+
+				// Patch the memoized moves of every other detective: only destinations at the vacated and the newly
+				// occupied node can change, as the tickets of other detectives stay the same. Mr X's tickets did change
+				ImmutableSet<Move>[] newPieceMoves = emptyPieceMoves();
+				for (Player detective : newDetectives) {
+					int index = ScotlandYard.pieceIndex(detective.piece());
+					if (detective != newDetective && pieceMoves[index] != null)
+						newPieceMoves[index] = patchMoves(table, pieceMoves[index], detective, oldDetective.location(), newLocation);
+				}
 
-				// convert Piece list of remaining players to Player list remaining players to check for swap to Mr X turn
-				List<Piece> newRemaining = remaining
-						.stream()
-						.filter(p -> p != move.commencedBy())
-						.collect(Collectors.toList());
+				// Ensure that particular detective won't move again this round, and check for swap to Mr X turn
+				var newRemaining = ImmutableSet.<Piece>builder();
+				boolean detectivesCanMove = false;
+				for (Piece piece : remaining) {
+					if (piece == move.commencedBy()) continue;
+					newRemaining.add(piece);
+					if (!detectivesCanMove) {
+						ImmutableSet<Move> known = newPieceMoves[ScotlandYard.pieceIndex(piece)];
+						detectivesCanMove = known != null
+								? !known.isEmpty()
+								: MoveGenerator.hasAnyMove(graph, newOccupied, newDetectives.get(indexOf(newDetectives, piece)));
+					}
+				}
 
-				var remainingPlayers = new ArrayList<Player>();
-				for(Piece piece : newRemaining)
-					remainingPlayers.add(playerFromPiece(piece));
+				// Update the hash with both players' changes and the detective's turn being taken
+				long newHash = hash ^ Zobrist.delta(oldDetective, newDetective) ^ Zobrist.delta(mrX, newMrX)
+						^ Zobrist.remaining(move.commencedBy());
 
 				// Advancement of the GameState
-				if(movesOf(remainingPlayers).isEmpty())
+				if(!detectivesCanMove) {
 					// If there are no more possible detective moves, swap to Mr X's turn
-					return new MyGameState(setup, ImmutableSet.of(MrX.MRX), log, newMrX, newDetectives);
+					for (Piece piece : remaining)
+						if (piece != move.commencedBy()) newHash ^= Zobrist.remaining(piece);
+					return new MyGameState(setup, ImmutableSet.of(MrX.MRX), log, newMrX, newDetectives, newPieceMoves, newOccupied,
+							newHash ^ Zobrist.remaining(MrX.MRX));
+				}
 				else
 					// Iterate through detective turns
-					return new MyGameState(setup, ImmutableSet.copyOf(newRemaining), log, newMrX, newDetectives);
+					return new MyGameState(setup, newRemaining.build(), log, newMrX, newDetectives, newPieceMoves, newOccupied, newHash);
 			}
 			// END STATE UPDATE
 		}
 		// END ADVANCE
 
-		// Return winner of game
+		// Return the Zobrist hash of this state, maintained incrementally
+		@Override
+		public long getZobristHash() { return hash; }
+
+		// Return winner of game, determined once on first access
 		@Nonnull
 		@Override
-		public ImmutableSet<Piece> getWinner() { return winner; }
+		public ImmutableSet<Piece> getWinner() {
+			ImmutableSet<Piece> result = winner;
+			if (result == null) winner = result = determineWinner();
+			return result;
+		}
 
-		// Return available moves in game
+		// Return available moves in game, generated once on first access
 		@Nonnull
 		@Override
-		public ImmutableSet<Move> getAvailableMoves() { return moves; }
+		public ImmutableSet<Move> getAvailableMoves() {
+			ImmutableSet<Move> result = moves;
+			if (result == null) moves = result = getWinner().isEmpty() ? movesOf(remaining) : ImmutableSet.of();
+			return result;
+		}
+
+		// Return available moves packed with MoveCodec, packed once on first access
+		@Nonnull
+		@Override
+		public ImmutableLongArray getAvailableMovesPacked() {
+			ImmutableLongArray result = packedMoves;
+			if (result == null) {
+				var builder = ImmutableLongArray.builder();
+				forEachMove(move -> builder.add(MoveCodec.encode(move)));
+				packedMoves = result = builder.build();
+			}
+			return result;
+		}
+
+		// Advance with the canonical instance of the packed move, so no Move is allocated
+		@Nonnull
+		@Override
+		public GameState advance(long packedMove) { return advance(table.decode(packedMove)); }
+
+		// Stream available moves without building a set, unless the moves were already generated
+		@Override
+		public void forEachMove(@Nonnull MoveSink sink) {
+
+			if (!getWinner().isEmpty()) return;
+			ImmutableSet<Move> known = moves;
+			if (known != null) {
+				for (Move move : known) sink.accept(move);
+				return;
+			}
+			for (Piece piece : remaining) {
+				ImmutableSet<Move> pieceKnown = pieceMoves[ScotlandYard.pieceIndex(piece)];
+				if (pieceKnown != null) for (Move move : pieceKnown) sink.accept(move);
+				else MoveGenerator.generate(table, occupied, playerFromPiece(piece), allowDouble(), sink);
+			}
+		}
+
+		// START DETERMINE WINNER
+		private ImmutableSet<Piece> determineWinner() {
+
+			// The detectives win, if:
+			// A detective finish a move on the same station as Mr X.
+			for (Player detective : detectives)
+				if (detective.location() == mrX.location())
+					return allDetectives();
+
+			// There are no unoccupied stations for Mr X to travel to.
+			if (remaining.contains(MrX.MRX) && !MoveGenerator.hasAnyMove(graph, occupied, mrX))
+				return allDetectives();
+
+			// Mr X wins, if:
+			// The detectives can no longer move any of their playing pieces.
+			if (!anyHasMove(detectives))
+				return ImmutableSet.of(MrX.MRX);
+
+			// Mr X manages to fill the log and the detectives subsequently fail to catch him with their final moves.
+			if (remaining.contains(MrX.MRX) && log.size() == setup.moves.size())
+				return ImmutableSet.of(MrX.MRX);
+
+			// End game conditions not met
+			return ImmutableSet.of();
+		}
+
+		// Return all detective pieces as the winners
+		private ImmutableSet<Piece> allDetectives() {
+			var pieces = ImmutableSet.<Piece>builder();
+			for (Player detective : detectives) pieces.add(detective.piece());
+			return pieces.build();
+		}
+		// END DETERMINE WINNER
 
 		// Return Player from corresponding Piece
 		private Player playerFromPiece(Piece piece){
 
-			var allPlayers = new ArrayList<Player>(detectives);
-			allPlayers.add(mrX);
-			var immutableAllPlayers= ImmutableList.copyOf(allPlayers);
-			return immutableAllPlayers
-					.stream()
-					.filter(p -> p.piece() == piece)
-					.findFirst().get();
+			return piece.isMrX() ? mrX : detectives.get(indexOf(detectives, piece));
 		}
 
-		// Return available moves of corresponding list of players
-		private ImmutableSet<Move> movesOf(List<Player> list){
+		// Return available moves of corresponding set of pieces
+		private ImmutableSet<Move> movesOf(Set<Piece> pieces){
+
+			if (pieces.size() == 1) return movesOf(pieces.iterator().next());
 
-			var allMoves = new ArrayList<Move>();
+			var allMoves = ImmutableSet.<Move>builder();
 
-			for(Player player : list) {
-				allMoves.addAll(makeSingleMoves(setup, detectives, player, player.location()));
-				allMoves.addAll(makeDoubleMoves(setup, detectives,player,player.location()));
+			for(Piece piece : pieces)
+				allMoves.addAll(movesOf(piece));
+
+			return allMoves.build();
+		}
+
+		// Return available moves of a single piece, generated once on first access
+		private ImmutableSet<Move> movesOf(Piece piece){
+
+			int index = ScotlandYard.pieceIndex(piece);
+			ImmutableSet<Move> result = pieceMoves[index];
+			if (result == null) {
+				var builder = ImmutableSet.<Move>builder();
+				MoveGenerator.generate(table, occupied, playerFromPiece(piece), allowDouble(), builder::add);
+				pieceMoves[index] = result = builder.build();
 			}
+			return result;
+		}
+
+		// Return whether Mr X has enough rounds left in the log for both halves of a double move
+		private boolean allowDouble() { return setup.moves.size() - log.size() >= 2; }
+
+		// Return whether any of the given players can make a move, stopping at the first one that can
+		private boolean anyHasMove(List<Player> players){
 
-			return ImmutableSet.copyOf(allMoves);
+			for(Player player : players)
+				if(MoveGenerator.hasAnyMove(graph, occupied, player)) return true;
+			return false;
 		}
 
 		// END GETTERS
+
+		// START DEBUG
+
+		// Re-check what build validated and what advance maintains incrementally, see DEBUG
+		private void verifyInvariants() {
+
+			validate(setup, mrX, detectives);
+
+			// Check that someone is due to move and the log still fits the game
+			if (remaining.isEmpty() || !getPlayers().containsAll(remaining))
+				throw new IllegalStateException("Invalid remaining pieces: " + remaining);
+			if (log.size() > setup.moves.size())
+				throw new IllegalStateException("Travel log longer than the game!");
+
+			// Check the incrementally maintained fields against ones computed from scratch
+			if (!Arrays.equals(occupied, occupancyOf(graph, detectives)))
+				throw new IllegalStateException("Occupancy out of date!");
+			if (hash != Zobrist.hash(mrX, detectives, remaining, log))
+				throw new IllegalStateException("Zobrist hash out of date!");
+			for (Piece piece : getPlayers()) {
+				ImmutableSet<Move> known = pieceMoves[ScotlandYard.pieceIndex(piece)];
+				if (known == null) continue;
+				var generated = ImmutableSet.<Move>builder();
+				MoveGenerator.generate(table, occupied, playerFromPiece(piece), allowDouble(), generated::add);
+				if (!known.equals(generated.build()))
+					throw new IllegalStateException("Carried over moves of " + piece + " out of date!");
+			}
+		}
+		// END DEBUG
 	}
 	// END CONSTRUCTOR
 
-	// START AVAILABLE MOVES
-
-	// Calculate set of all the possible single moves player can make
-	private static ImmutableSet<Move.SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player, int source) {
+	// START CHECKS
+
+	// Opt-in with -Dscotlandyard.debug=true: every state then re-runs validate and checks the fields advance derives
+	// incrementally against ones computed from scratch, so a broken transition fails where it happens
+	static final boolean DEBUG = Boolean.getBoolean("scotlandyard.debug");
+
+	// Throw if the given players and setup do not make a valid game, shared by every GameState implementation
+	static void validate(GameSetup setup, Player mrX, List<Player> detectives) {
+
+		// Check if Mrx is null
+		if (Objects.isNull(mrX))
+			throw new NullPointerException("Mr X is null!");
+
+		// Check if detectives is null
+		if (Objects.isNull(detectives))
+			throw new NullPointerException("Detectives is null!");
+
+		// Check if Mrx exists
+		if (!mrX.piece().isMrX())
+			throw new IllegalArgumentException("No mrX!");
+
+		// Check if there are more than one Mrx or if detectives and mrX have been swapped
+		for (Player detective : detectives)
+			if (detective.piece().isMrX())
+				throw new IllegalArgumentException("More than one Mr X or swapped Mr X!");
+
+		// Check if there are more than one of the same detective
+		final Set<Player> detectiveHashSet = new HashSet<>();
+		for (Player detective : detectives)
+			if (!detectiveHashSet.add(detective))
+				throw new IllegalArgumentException("Duplicate detective!");
+
+		// Check if there are more than one of the same detective
+		final Set<Integer> detectiveLocationHashSet = new HashSet<>();
+		for (Player detective : detectives)
+			if (!detectiveLocationHashSet.add(detective.location()))
+				throw new IllegalArgumentException("Detective location overlap!");
+
+		// Check if the detectives have the secret ticket
+		for (Player detective : detectives)
+			if (detective.has(Ticket.SECRET))
+				throw new IllegalArgumentException("Detectives have the secret ticket!");
+
+		// Check if the detectives have the double ticket
+		for (Player detective : detectives)
+			if (detective.has(Ticket.DOUBLE))
+				throw new IllegalArgumentException("Detectives have the double ticket!");
+
+		// Check if moves is empty
+		if(setup.moves.isEmpty())
+			throw new IllegalArgumentException("Empty moves!");
+
+		// Check if graph is empty
+		if (setup.graph.nodes().isEmpty())
+			throw new IllegalArgumentException("Empty graph!");
+	}
+	// END CHECKS
 
-		// Create an empty collection of some sort, say, HashSet, to store all the SingleMove we generate
-		final var singleMoves = new ArrayList<Move.SingleMove>();
+	// START PIECE INDEX
 
-		for (int destination : setup.graph.adjacentNodes(source)) {
-			boolean occupied = false;
+	// Per-piece arrays are indexed by ScotlandYard.pieceIndex, with Mr X first
+	private static final int MRX_INDEX = 0;
 
-			// Find out if destination is occupied by a detective
-			for (Player detective : detectives)
-				if (destination == detective.location())
-				//  If the location is occupied, don't add to the collection of moves to return
-				{
-					occupied = true;
-					break;
-				}
+	// Return a per-piece array of move sets with nothing memoized yet
+	@SuppressWarnings("unchecked")
+	private static ImmutableSet<Move>[] emptyPieceMoves() {
+		return (ImmutableSet<Move>[]) new ImmutableSet<?>[ScotlandYard.ALL_PIECES.size()];
+	}
 
-			if (occupied) continue;
+	// Return the position of the given piece in a list of players
+	private static int indexOf(List<Player> players, Piece piece) {
+		for (int i = 0; i < players.size(); i++)
+			if (players.get(i).piece() == piece) return i;
+		throw new IllegalArgumentException("No player for " + piece);
+	}
+	// END PIECE INDEX
 
-			for (Transport t : Objects.requireNonNull(setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of()))) {
-				// Find out if the player has the required tickets
-				if (player.has(t.requiredTicket()))
-					//  If it does, construct a SingleMove and add it the collection of moves to return
-					singleMoves.add(new Move.SingleMove(player.piece(), source, t.requiredTicket(), destination));
-			}
+	// START AVAILABLE MOVES
 
-			// Consider the rules of secret moves here
-			if (player.has(Ticket.SECRET))
-				// Add moves to the destination via a secret ticket if there are any left with the player
-				singleMoves.add(new Move.SingleMove(player.piece(), source, Ticket.SECRET, destination)); // making sure to add the secret move if ticket for it is present
-		}
+	// Move generation itself lives in MoveGenerator, which runs on the primitive adjacency table in CompiledGraph
 
-		// Return the collection of moves
-		return ImmutableSet.copyOf(singleMoves);
-	}
+	// Return the moves of a detective after another detective moved from vacated to occupied, reusing the
+	// given moves: only moves to the occupied node disappear and only moves to the vacated node can appear
+	private static ImmutableSet<Move> patchMoves(MoveTable table, ImmutableSet<Move> moves, Player detective, int vacated, int occupied) {
 
-	// Calculate set of all the possible double moves player can make
-	private static ImmutableSet<Move.DoubleMove> makeDoubleMoves(GameSetup setup, List<Player> detectives, Player player, int source) {
+		// A double move could pass through either node, generate those from scratch instead
+		if (detective.has(Ticket.DOUBLE)) return null;
 
-		final var singleMoves = makeSingleMoves(setup,detectives,player,source);
+		boolean removes = false;
+		for (Move move : moves)
+			if (locationAfterMove(move) == occupied) {
+				removes = true;
+				break;
+			}
 
-		// Create an empty collection of some sort, say, HashSet, to store all the DoubleMove we generate
-		final var doubleMoves = new ArrayList<Move.DoubleMove>();
+		final var added = new ArrayList<Move>();
+		final CompiledGraph graph = table.graph();
+		final int source = detective.location();
+		for (int edge = graph.start(source), end = graph.end(source); edge < end; edge++)
+			if (graph.target(edge) == vacated)
+				MoveGenerator.generateAlong(table, detective, edge, added::add);
 
-		// Check if player has required ticket and moves left
-		if(player.has(Ticket.DOUBLE) && setup.moves.size() > 1) {
+		if (!removes && added.isEmpty()) return moves;
 
-			for (Move.SingleMove move : singleMoves) {
-				int firstDestination = move.destination;
-				Ticket firstTicket = move.ticket;
+		var patched = ImmutableSet.<Move>builder();
+		for (Move move : moves)
+			if (locationAfterMove(move) != occupied) patched.add(move);
+		return patched.addAll(added).build();
+	}
 
-				for (int secondDestination : setup.graph.adjacentNodes(firstDestination)) {
-					boolean occupied = false;
+	// START OCCUPANCY
 
-					// Find out if second destination is occupied by a detective
-					for (Player detective : detectives)
-						if (secondDestination == detective.location())
-						//  If the location is occupied, don't add to the collection of moves to return
-						{
-							occupied = true;
-							break;
-						}
+	// Return a bitset over node ids with the locations of all given detectives set
+	private static long[] occupancyOf(CompiledGraph graph, List<Player> detectives) {
 
-					if (occupied) continue;
+		int bound = graph.nodeBound();
+		for (Player detective : detectives)
+			bound = Math.max(bound, detective.location() + 1);
 
-					for (Transport t : Objects.requireNonNull(setup.graph.edgeValueOrDefault(firstDestination, secondDestination, ImmutableSet.of()))) {
-						Ticket secondTicket = t.requiredTicket();
+		final long[] bits = new long[(bound + 63) >>> 6];
+		for (Player detective : detectives)
+			setBit(bits, detective.location());
+		return bits;
+	}
 
-						// Find out if the player has the required tickets
-						if (player.has(firstTicket) && player.has(secondTicket))
-							if (firstTicket != secondTicket || player.hasAtLeast(firstTicket, 2))
-								//  If it does, construct a DoubleMove and add it the collection of moves to return
-								doubleMoves.add(new Move.DoubleMove(player.piece(), source, firstTicket, firstDestination, secondTicket, secondDestination));
-					}
+	private static void setBit(long[] bits, int node) { bits[node >>> 6] |= 1L << node; }
 
-					// consider the rules of secret moves
-					if (player.has(Ticket.SECRET))
-						//  Add moves to the destination via a secret ticket if there are any left with the player
-						doubleMoves.add(new Move.DoubleMove(player.piece(), source, firstTicket, firstDestination, Ticket.SECRET, secondDestination));
-				}
-			}
-		}
-		// Return the collection of moves
-		return ImmutableSet.copyOf(doubleMoves);
-	}
+	private static void clearBit(long[] bits, int node) { bits[node >>> 6] &= ~(1L << node); }
+	// END OCCUPANCY
 	// END AVAILABLE MOVES
 
 	// START VISITOR PATTERN
@@ -460,41 +577,44 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		});
 	}
 
-	// Returns updated Mr X log when game state advances
-	private static List<LogEntry> logEntriesAfterMove(GameSetup setup, ImmutableList<LogEntry> log, Move move){
+	// Adds the updated Mr X log entries to newLog when game state advances
+	private static void logEntriesAfterMove(MoveTable table, GameSetup setup, ImmutableList<LogEntry> log, Move move, ImmutableList.Builder<LogEntry> newLog){
 
-		// If a move should be revealed according to the GameSetup, reveal the destination in the log, otherwise keep the desination hidden
-		return move.accept(new Move.Visitor<>() {
+		move.accept(new Move.Visitor<Void>() {
 			@Override
-			public List<LogEntry> visit(Move.SingleMove singleMove) {
-				if (setup.moves.get(log.size()))
-					return List.of(LogEntry.reveal(singleMove.ticket, singleMove.destination));
-				else
-					return List.of(LogEntry.hidden(singleMove.ticket));
+			public Void visit(Move.SingleMove singleMove) {
+				newLog.add(logEntry(table, setup, log.size(), singleMove.ticket, singleMove.destination));
+				return null;
 			}
 			@Override
-			public List<LogEntry> visit(Move.DoubleMove doubleMove) {
-				var newLog = new ArrayList<LogEntry>();
-
-				if (setup.moves.get(log.size()))
-					newLog.add(LogEntry.reveal(doubleMove.ticket1, doubleMove.destination1));
-				else
-					newLog.add(LogEntry.hidden(doubleMove.ticket1));
-
-				if (setup.moves.get(log.size() + 1))
-					newLog.add(LogEntry.reveal(doubleMove.ticket2, doubleMove.destination2));
-				else
-					newLog.add(LogEntry.hidden(doubleMove.ticket2));
-
-				return newLog;
+			public Void visit(Move.DoubleMove doubleMove) {
+				newLog.add(logEntry(table, setup, log.size(), doubleMove.ticket1, doubleMove.destination1));
+				newLog.add(logEntry(table, setup, log.size() + 1, doubleMove.ticket2, doubleMove.destination2));
+				return null;
 			}
 		});
 	}
+
+	// If a move should be revealed according to the GameSetup, reveal the destination in the log, otherwise keep the desination hidden
+	static LogEntry logEntry(MoveTable table, GameSetup setup, int round, Ticket ticket, int destination){
+
+		if (setup.moves.get(round))
+			return table.reveal(ticket, destination);
+		else
+			return LogEntry.hidden(ticket);
+	}
 	// END VISITOR PATTERN
 
 	// Build method of MyGameStateFactory
 	@Nonnull @Override public GameState build(GameSetup setup, Player mrX, ImmutableList<Player> detectives){
-		return new MyGameState(setup, ImmutableSet.of(MrX.MRX), ImmutableList.of(), mrX, detectives);
+
+		// Validate once, the only check the states themselves skip
+		validate(setup, mrX, detectives);
+
+		final ImmutableSet<Piece> remaining = ImmutableSet.of(MrX.MRX);
+		final ImmutableList<LogEntry> log = ImmutableList.of();
+		return new MyGameState(setup, remaining, log, mrX, detectives, emptyPieceMoves(),
+				occupancyOf(CompiledGraph.of(setup.graph), detectives), Zobrist.hash(mrX, detectives, remaining, log));
 	}
 }
 // END FACTORY
\ No newline at end of file
@@ -0,0 +1,195 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The positions of the nodes of a map, such as those in {@code pos.txt}, held in primitive arrays
+ * indexed by node id, with a uniform grid over them for hit-testing with {@link #nearest} and
+ * viewport queries with {@link #forEachWithin}.
+ * <br>
+ * The grid has about two nodes per cell and stores the nodes of each cell contiguously, the same
+ * way {@link CompiledGraph} stores edges, so a query only looks at the few cells around it and
+ * allocates nothing, whatever the size of the map.
+ */
+public final class NodePositions {
+
+	/**
+	 * The node reported when no node is near enough
+	 */
+	public static final int NONE = -1;
+
+	private final int[] xs;
+	private final int[] ys;
+	// a bit per node id, set for nodes that have a position
+	private final long[] present;
+	private final int count;
+
+	private final int minX, minY;
+	private final int cell, columns, rows;
+	// the nodes of cell c are cellNodes[cellStarts[c], cellStarts[c + 1])
+	private final int[] cellStarts;
+	private final int[] cellNodes;
+
+	private NodePositions(int count, int[] nodes, int[] xs, int[] ys) {
+		int bound = 0;
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative node: " + nodes[i]);
+			bound = Math.max(bound, nodes[i] + 1);
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		this.count = count;
+		this.xs = new int[bound];
+		this.ys = new int[bound];
+		this.present = new long[(bound + Long.SIZE - 1) / Long.SIZE];
+		for (int i = 0; i < count; i++) {
+			if ((present[nodes[i] >>> 6] & 1L << nodes[i]) != 0)
+				throw new IllegalArgumentException("Duplicate node: " + nodes[i]);
+			present[nodes[i] >>> 6] |= 1L << nodes[i];
+			this.xs[nodes[i]] = xs[i];
+			this.ys[nodes[i]] = ys[i];
+		}
+
+		this.minX = count == 0 ? 0 : minX;
+		this.minY = count == 0 ? 0 : minY;
+		long width = count == 0 ? 1 : (long) maxX - minX + 1;
+		long height = count == 0 ? 1 : (long) maxY - minY + 1;
+		long size = Math.max(1, (long) Math.ceil(Math.sqrt(2.0 * width * height / Math.max(1, count))));
+		// long thin maps would otherwise get far more cells than nodes
+		while ((width / size + 1) * (height / size + 1) > 4L * count + 16) size *= 2;
+		this.cell = (int) Math.min(size, Integer.MAX_VALUE);
+		this.columns = (int) ((width - 1) / cell + 1);
+		this.rows = (int) ((height - 1) / cell + 1);
+
+		cellStarts = new int[columns * rows + 1];
+		cellNodes = new int[count];
+		for (int i = 0; i < count; i++) cellStarts[cellOf(xs[i], ys[i]) + 1]++;
+		for (int c = 0; c < columns * rows; c++) cellStarts[c + 1] += cellStarts[c];
+		final int[] next = cellStarts.clone();
+		for (int i = 0; i < count; i++) cellNodes[next[cellOf(xs[i], ys[i])]++] = nodes[i];
+	}
+
+	/**
+	 * @param count the number of nodes
+	 * @param nodes the node ids, at least count of them
+	 * @param xs the horizontal position of each node, in the same order
+	 * @param ys the vertical position of each node, in the same order
+	 * @return the positions of the given nodes; the arrays are copied
+	 */
+	@Nonnull public static NodePositions of(int count, @Nonnull int[] nodes,
+	                                        @Nonnull int[] xs, @Nonnull int[] ys) {
+		if (count < 0 || nodes.length < count || xs.length < count || ys.length < count)
+			throw new IllegalArgumentException("Fewer than " + count + " positions");
+		return new NodePositions(count, nodes, xs, ys);
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() { return count; }
+	/**
+	 * @param node the node
+	 * @return whether the given node has a position
+	 */
+	public boolean contains(int node) {
+		return node >= 0 && node < xs.length && (present[node >>> 6] & 1L << node) != 0;
+	}
+	/**
+	 * @param node the node
+	 * @return the horizontal position of the node
+	 */
+	public int x(int node) { return xs[checkNode(node)]; }
+	/**
+	 * @param node the node
+	 * @return the vertical position of the node
+	 */
+	public int y(int node) { return ys[checkNode(node)]; }
+
+	/**
+	 * @param x the horizontal position
+	 * @param y the vertical position
+	 * @param maxDistance the furthest a node may be from the given position
+	 * @return the node closest to the given position, the lowest id on ties; {@link #NONE} if no
+	 * node is within maxDistance
+	 */
+	public int nearest(double x, double y, double maxDistance) {
+		final int column = clamp((int) Math.floor((x - minX) / cell), columns);
+		final int row = clamp((int) Math.floor((y - minY) / cell), rows);
+		int best = NONE;
+		double bestDistance = maxDistance * maxDistance;
+		final int rings = Math.max(columns, rows);
+		for (int ring = 0; ring <= rings; ring++) {
+			// nodes in ring r + 1 and beyond are at least r cells away from the position
+			double closest = (double) (ring - 1) * cell;
+			if (ring > 0 && closest * closest > bestDistance) break;
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0 || r >= rows) continue;
+				boolean edge = r == row - ring || r == row + ring;
+				for (int c = column - ring; c <= column + ring; c += edge ? 1 : 2 * ring) {
+					if (c >= 0 && c < columns) {
+						for (int i = cellStarts[r * columns + c]; i < cellStarts[r * columns + c + 1]; i++) {
+							int node = cellNodes[i];
+							double dx = xs[node] - x, dy = ys[node] - y;
+							double distance = dx * dx + dy * dy;
+							if (distance < bestDistance || distance == bestDistance && (best == NONE || node < best)) {
+								best = node;
+								bestDistance = distance;
+							}
+						}
+					}
+					if (ring == 0) break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gives every node inside the given rectangle, edges included, to the action, in no
+	 * particular order.
+	 *
+	 * @param minX the left edge
+	 * @param minY the top edge
+	 * @param maxX the right edge
+	 * @param maxY the bottom edge
+	 * @param action the action
+	 * @return the number of nodes given to the action
+	 */
+	public int forEachWithin(double minX, double minY, double maxX, double maxY,
+	                         @Nonnull IntConsumer action) {
+		if (count == 0 || maxX < minX || maxY < minY) return 0;
+		final int fromColumn = clamp((int) Math.floor((minX - this.minX) / cell), columns);
+		final int toColumn = clamp((int) Math.floor((maxX - this.minX) / cell), columns);
+		final int fromRow = clamp((int) Math.floor((minY - this.minY) / cell), rows);
+		final int toRow = clamp((int) Math.floor((maxY - this.minY) / cell), rows);
+		int found = 0;
+		for (int r = fromRow; r <= toRow; r++)
+			for (int i = cellStarts[r * columns + fromColumn]; i < cellStarts[r * columns + toColumn + 1]; i++) {
+				int node = cellNodes[i];
+				if (xs[node] >= minX && xs[node] <= maxX && ys[node] >= minY && ys[node] <= maxY) {
+					action.accept(node);
+					found++;
+				}
+			}
+		return found;
+	}
+
+	private int cellOf(int x, int y) {
+		return (int) (((long) y - minY) / cell) * columns + (int) (((long) x - minX) / cell);
+	}
+
+	private static int clamp(int index, int length) {
+		return Math.max(0, Math.min(length - 1, index));
+	}
+
+	private int checkNode(int node) {
+		if (!contains(node)) throw new IllegalArgumentException("No position for node: " + node);
+		return node;
+	}
+}
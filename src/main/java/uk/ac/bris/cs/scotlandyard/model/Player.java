@@ -2,7 +2,6 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -12,19 +11,52 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 /**
  * A POJO representing an immutable player of the ScotlandYard game.
  * Each player contains the {@link Piece} (coloured counter), {@link Ticket}s, and the location.
+ * <br>
+ * Tickets are held packed in a single long: an 8 bit counter per {@link Ticket} ordinal followed
+ * by a bit per ticket recording whether that ticket is on the board at all, so using and giving
+ * tickets is plain arithmetic. {@link #tickets()} is a view built on demand.
  */
 public final class Player {
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int COUNTER_BITS = 8;
+	private static final int MAX_COUNT = (1 << COUNTER_BITS) - 1;
+	private static final int PRESENT_SHIFT = TICKETS.length * COUNTER_BITS;
+
 	private final Piece piece;
-	private final ImmutableMap<Ticket, Integer> tickets;
+	private final long tickets;
 	private final int location;
+	// the map view of tickets, built on first use unless given to the constructor
+	private ImmutableMap<Ticket, Integer> ticketMap;
 
+	/**
+	 * @param piece the piece
+	 * @param tickets the ticket board; counts must be in the range [0, 255]
+	 * @param location the location
+	 */
 	public Player(@Nonnull Piece piece,
 	              @Nonnull ImmutableMap<Ticket, Integer> tickets,
 	              int location) {
+		this(piece, pack(Objects.requireNonNull(tickets)), location);
+		this.ticketMap = tickets;
+	}
+
+	private Player(Piece piece, long tickets, int location) {
 		this.piece = Objects.requireNonNull(piece);
-		this.tickets = Objects.requireNonNull(tickets);
+		this.tickets = tickets;
 		this.location = location;
 	}
+
+	private static long pack(ImmutableMap<Ticket, Integer> tickets) {
+		long packed = 0;
+		for (var entry : tickets.entrySet()) {
+			int count = entry.getValue();
+			if (count < 0 || count > MAX_COUNT)
+				throw new IllegalArgumentException("Ticket count out of range: " + entry);
+			int ordinal = entry.getKey().ordinal();
+			packed |= (long) count << ordinal * COUNTER_BITS | 1L << PRESENT_SHIFT + ordinal;
+		}
+		return packed;
+	}
 	/**
 	 * @return the piece
 	 */
@@ -40,7 +72,16 @@ public final class Player {
 	/**
 	 * @return the ticket
 	 */
-	@Nonnull public ImmutableMap<Ticket, Integer> tickets() { return tickets; }
+	@Nonnull public ImmutableMap<Ticket, Integer> tickets() {
+		ImmutableMap<Ticket, Integer> map = ticketMap;
+		if (map == null) {
+			var builder = ImmutableMap.<Ticket, Integer>builderWithExpectedSize(TICKETS.length);
+			for (Ticket ticket : TICKETS)
+				if (isPresent(ticket)) builder.put(ticket, count(ticket));
+			ticketMap = map = builder.build();
+		}
+		return map;
+	}
 	/**
 	 * @return the location
 	 */
@@ -49,16 +90,36 @@ public final class Player {
 	 * @param ticket the ticket
 	 * @return whether the player has the given ticket
 	 */
-	public boolean has(@Nonnull Ticket ticket) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) != 0;
-	}
+	public boolean has(@Nonnull Ticket ticket) { return count(ticket) != 0; }
 	/**
 	 * @param ticket the ticket
 	 * @param count the required count
 	 * @return whether the player has &gt;= the required numbers of the given ticket
 	 */
-	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) >= count;
+	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) { return count(ticket) >= count; }
+	/**
+	 * @param ticket the ticket
+	 * @return the number of the given ticket the player has, zero if not on the ticket board
+	 */
+	public int count(@Nonnull Ticket ticket) { return count(tickets, ticket); }
+	private static int count(long tickets, Ticket ticket) {
+		return (int) (tickets >>> ticket.ordinal() * COUNTER_BITS) & MAX_COUNT;
+	}
+	private static boolean isPresent(long tickets, Ticket ticket) {
+		return (tickets & 1L << PRESENT_SHIFT + ticket.ordinal()) != 0;
+	}
+	private boolean isPresent(Ticket ticket) { return isPresent(tickets, ticket); }
+	// a ticket not on the ticket board at all is not given
+	private static long give(long tickets, Ticket ticket) {
+		if (!isPresent(tickets, ticket)) return tickets;
+		if (count(tickets, ticket) == MAX_COUNT)
+			throw new IllegalArgumentException("Too many " + ticket + " tickets");
+		return tickets + (1L << ticket.ordinal() * COUNTER_BITS);
+	}
+	private static long use(long tickets, Ticket ticket) {
+		if (count(tickets, ticket) == 0)
+			throw new IllegalArgumentException("No " + ticket + " remaining");
+		return tickets - (1L << ticket.ordinal() * COUNTER_BITS);
 	}
 	/**
 	 * See {@link #give(Ticket)}
@@ -67,18 +128,16 @@ public final class Player {
 	 * @return a new player with one more of the given tickets
 	 */
 	@Nonnull public Player give(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.give(t);
-		return x;
+		long x = this.tickets;
+		for (Ticket t : tickets) x = give(x, Objects.requireNonNull(t));
+		return new Player(piece, x, location);
 	}
 	/**
 	 * @param ticket the ticket
 	 * @return a new player with one more of the given ticket
 	 */
 	@Nonnull public Player give(@Nonnull Ticket ticket) {
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n + 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		return new Player(piece, give(tickets, Objects.requireNonNull(ticket)), location);
 	}
 	/**
 	 * See {@link #use(Ticket)}
@@ -87,33 +146,34 @@ public final class Player {
 	 * @return a new player with one less of the given tickets
 	 */
 	@Nonnull public Player use(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.use(t);
-		return x;
+		long x = this.tickets;
+		for (Ticket t : tickets) x = use(x, Objects.requireNonNull(t));
+		return new Player(piece, x, location);
 	}
 	/**
 	 * @param ticket the ticket
 	 * @return a new player with one less of the given ticket
 	 */
 	@Nonnull public Player use(@Nonnull Ticket ticket) {
-		if (!has(ticket))
-			throw new IllegalArgumentException("No " + ticket + " remaining");
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n - 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		return new Player(piece, use(tickets, Objects.requireNonNull(ticket)), location);
 	}
 	/**
 	 * @param newLocation the location
 	 * @return a new player at the given location
 	 */
-	@Nonnull public Player at(int newLocation) { return new Player(piece, tickets, newLocation); }
+	@Nonnull public Player at(int newLocation) {
+		var moved = new Player(piece, tickets, newLocation);
+		moved.ticketMap = ticketMap;
+		return moved;
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Player that = (Player) o;
-		return location == that.location && piece == that.piece &&
-				Objects.equals(tickets, that.tickets);
+		return location == that.location && piece == that.piece && tickets == that.tickets;
+	}
+	@Override public int hashCode() {
+		return 31 * (31 * piece.hashCode() + Long.hashCode(tickets)) + location;
 	}
-	@Override public int hashCode() { return Objects.hash(piece, tickets, location); }
-	@Override public String toString() { return piece + "@" + location + "(" + tickets + ")"; }
+	@Override public String toString() { return piece + "@" + location + "(" + tickets() + ")"; }
 }
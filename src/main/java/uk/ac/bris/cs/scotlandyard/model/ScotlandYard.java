@@ -14,6 +14,7 @@ import com.google.common.io.Resources;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Comparator;
 import java.util.EnumSet;
@@ -62,6 +63,16 @@ public final class ScotlandYard {
 	public static final Comparator<Piece> PIECE_VALUE_ORDER =
 			Comparator.comparingInt(ALL_PIECES::indexOf);
 
+	/**
+	 * A constant time equivalent of {@code ALL_PIECES.indexOf(piece)}, useful for per-piece arrays
+	 *
+	 * @param piece the piece
+	 * @return the index of the given piece in {@link #ALL_PIECES}
+	 */
+	public static int pieceIndex(@Nonnull Piece piece) {
+		return piece.isMrX() ? 0 : ((Detective) piece).ordinal() + 1;
+	}
+
 	/**
 	 * Reveal moves for a 24 move game
 	 */
@@ -176,10 +187,69 @@ public final class ScotlandYard {
 		return builder.build();
 	}
 
+	/**
+	 * @return the positions from {@code pos.txt} on the png map, as in
+	 * {@link #pngMapPositionEntries()}, indexed for hit-testing and viewport queries
+	 * @throws IOException if the position resource cannot be read
+	 */
+	@Nonnull public static NodePositions pngMapPositions() throws IOException {
+		var entries = pngMapPositionEntries();
+		int[] nodes = new int[entries.size()], xs = new int[entries.size()], ys = new int[entries.size()];
+		int i = 0;
+		for (var entry : entries.entrySet()) {
+			nodes[i] = entry.getKey();
+			xs[i] = entry.getValue().getKey();
+			ys[i++] = entry.getValue().getValue();
+		}
+		return NodePositions.of(i, nodes, xs, ys);
+	}
+
+	private static volatile ImmutableValueGraph<Integer, ImmutableSet<Transport>> standardGraph;
+
+	/**
+	 * The graph is read once and the same instance is returned afterwards, so that per-graph
+	 * caches such as {@link CompiledGraph#of(ImmutableValueGraph)} are shared between games.
+	 *
+	 * @return the standard game graph from {@code graph.txt}
+	 * @throws IOException if the graph resource cannot be read
+	 */
 	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
 	standardGraph() throws IOException {
-		return readGraph(Resources.toString(
-				Resources.getResource("graph.txt"), StandardCharsets.UTF_8));
+		var graph = standardGraph;
+		if (graph == null) {
+			synchronized (ScotlandYard.class) {
+				graph = standardGraph;
+				if (graph == null) standardGraph = graph = readGraph(Resources.toString(
+						Resources.getResource("graph.txt"), StandardCharsets.UTF_8));
+			}
+		}
+		return graph;
+	}
+
+	private static volatile DistanceTable standardDistances;
+
+	/**
+	 * The table is loaded from a cache file in the directory named by the
+	 * {@code scotlandyard.cache} system property, {@code .scotlandyard} in the user's home directory
+	 * by default, and written there when missing, stale or damaged.
+	 *
+	 * @return the distance table of {@link #standardGraph()}
+	 * @throws IOException if the graph resource cannot be read
+	 */
+	@Nonnull public static DistanceTable standardDistances() throws IOException {
+		var distances = standardDistances;
+		if (distances == null) {
+			var graph = CompiledGraph.of(standardGraph());
+			synchronized (ScotlandYard.class) {
+				distances = standardDistances;
+				if (distances == null) standardDistances = distances = DistanceTable.cached(
+						Path.of(System.getProperty("scotlandyard.cache",
+								Path.of(System.getProperty("user.home"), ".scotlandyard").toString()),
+								"distances.bin"),
+						graph);
+			}
+		}
+		return distances;
 	}
 
 	@Nonnull public static ImmutableValueGraph<Integer, ImmutableSet<Transport>>
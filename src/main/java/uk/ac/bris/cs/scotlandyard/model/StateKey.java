@@ -0,0 +1,133 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A compact, canonical key of what a {@link Board} exposes, equal for states that only differ by
+ * which detective piece is which. Detectives are keyed by their tickets, location and whether they
+ * are still due to move, without their colour, and sorted; so RED at 91 with GREEN at 29 has the
+ * same key as GREEN at 91 with RED at 29 when both hold the same tickets.
+ * <br>
+ * A key is a few longs: one for MrX, one per detective and one per three entries of the travel
+ * log. MrX's location is hidden from a {@link Board} and is only part of the key while MrX is due
+ * to move, as in {@link Zobrist#hash(Board)}. The setup is not part of the key, so only keys of the
+ * same game should be compared. Nodes must be below {@link MoveCodec#MAX_NODE} and
+ * ticket counts in [0, 255].
+ */
+public final class StateKey {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int COUNTER_BITS = 8;
+	private static final int MAX_COUNT = (1 << COUNTER_BITS) - 1;
+	private static final int NODE_BITS = 18;
+	// after the ticket counters of a player
+	private static final int LOCATION_SHIFT = TICKETS.length * COUNTER_BITS;
+	private static final int DUE_SHIFT = LOCATION_SHIFT + NODE_BITS;
+	private static final int LOG_ENTRY_BITS = 3 + NODE_BITS;
+	private static final int LOG_ENTRIES_PER_WORD = Long.SIZE / LOG_ENTRY_BITS;
+
+	private final long[] words;
+	private final int hash;
+
+	private StateKey(long[] words) {
+		this.words = words;
+		this.hash = Arrays.hashCode(words);
+	}
+
+	/**
+	 * @param board the board
+	 * @return the canonical key of the given board
+	 * @throws IllegalArgumentException if a node or a ticket count is out of range
+	 */
+	@Nonnull public static StateKey of(@Nonnull Board board) {
+		final ImmutableList<LogEntry> log = board.getMrXTravelLog();
+		final int detectives = board.getPlayers().size() - 1;
+		final long[] words = new long[1 + detectives
+				+ (log.size() + LOG_ENTRIES_PER_WORD - 1) / LOG_ENTRIES_PER_WORD];
+
+		// MrX's location is only known from his moves, the other pieces due are those with moves
+		int mrXLocation = -1;
+		long due = 0;
+		for (Move move : board.getAvailableMoves()) {
+			due |= 1L << ScotlandYard.pieceIndex(move.commencedBy());
+			if (move.commencedBy().isMrX()) mrXLocation = move.source();
+		}
+
+		int detective = 1;
+		for (Piece piece : board.getPlayers()) {
+			long word = tickets(board.getPlayerTickets(piece).orElseThrow())
+					| (due >>> ScotlandYard.pieceIndex(piece) & 1) << DUE_SHIFT;
+			if (piece.isMrX()) words[0] = word | node(mrXLocation) << LOCATION_SHIFT;
+			else words[detective++] = word
+					| node(board.getDetectiveLocation((Detective) piece).orElseThrow()) << LOCATION_SHIFT;
+		}
+		// Sorting forgets which detective is which
+		Arrays.sort(words, 1, 1 + detectives);
+
+		for (int i = 0; i < log.size(); i++) {
+			LogEntry entry = log.get(i);
+			long packed = entry.ticket().ordinal() | node(entry.location().orElse(-1)) << 3;
+			words[1 + detectives + i / LOG_ENTRIES_PER_WORD] |=
+					packed << (i % LOG_ENTRIES_PER_WORD) * LOG_ENTRY_BITS;
+		}
+		return new StateKey(words);
+	}
+
+	private static long tickets(Board.TicketBoard board) {
+		long packed = 0;
+		for (Ticket ticket : TICKETS) {
+			int count = board.getCount(ticket);
+			if (count < 0 || count > MAX_COUNT)
+				throw new IllegalArgumentException("Ticket count out of range: " + ticket + "=" + count);
+			packed |= (long) count << ticket.ordinal() * COUNTER_BITS;
+		}
+		return packed;
+	}
+
+	// an unknown location, -1, is stored as 0 and every node as one more than itself
+	private static long node(int node) {
+		if (node < -1 || node >= MoveCodec.MAX_NODE)
+			throw new IllegalArgumentException("Node out of range: " + node);
+		return node + 1;
+	}
+
+	/**
+	 * @return a 64 bit fingerprint of this key, for tables that store fingerprints instead of keys
+	 */
+	public long fingerprint() {
+		long h = words.length;
+		for (long word : words) {
+			h = (h ^ word) * 0x9e3779b97f4a7c15L;
+			h ^= h >>> 32;
+		}
+		return h;
+	}
+
+	/**
+	 * @return the number of longs this key is made of
+	 */
+	public int size() { return words.length; }
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		StateKey that = (StateKey) o;
+		return hash == that.hash && Arrays.equals(words, that.words);
+	}
+
+	@Override public int hashCode() { return hash; }
+
+	@Override public String toString() {
+		var builder = new StringBuilder("StateKey[");
+		for (int i = 0; i < words.length; i++)
+			builder.append(i == 0 ? "" : ",").append(Long.toHexString(words[i]));
+		return builder.append(']').toString();
+	}
+}
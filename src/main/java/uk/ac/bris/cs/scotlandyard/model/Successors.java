@@ -0,0 +1,69 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+/**
+ * Expands every available move of a {@link GameState} into its successor state. Below
+ * {@link #PARALLEL_THRESHOLD} moves the successors are advanced on the calling thread, as handing
+ * them out costs more than advancing; above it the moves are split into contiguous chunks, one per
+ * available processor at most, each advanced as one task on the given executor.
+ */
+final class Successors {
+
+	private Successors() {}
+
+	/**
+	 * The number of moves from which successors are advanced in parallel
+	 */
+	static final int PARALLEL_THRESHOLD = 64;
+
+	// the fewest moves worth a task of their own
+	private static final int MIN_CHUNK = PARALLEL_THRESHOLD / 2;
+
+	/**
+	 * @param state the state to expand; its advance must be safe to call from several threads
+	 * @param executor runs the chunks of moves when expanding in parallel
+	 * @return the successor of the given state for every available move, in the order of
+	 * {@link GameState#getAvailableMoves()}
+	 */
+	@Nonnull static ImmutableMap<Move, GameState> of(@Nonnull GameState state,
+	                                                 @Nonnull Executor executor) {
+		// Generate the moves here so the tasks only read the memoized set
+		final ImmutableList<Move> moves = state.getAvailableMoves().asList();
+		final GameState[] children = new GameState[moves.size()];
+		if (moves.size() < PARALLEL_THRESHOLD) advance(state, moves, children, 0, moves.size());
+		else {
+			final int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+					moves.size() / MIN_CHUNK));
+			final var tasks = new CompletableFuture<?>[chunks];
+			for (int i = 0; i < chunks; i++) {
+				final int from = moves.size() * i / chunks, to = moves.size() * (i + 1) / chunks;
+				tasks[i] = CompletableFuture.runAsync(
+						() -> advance(state, moves, children, from, to), executor);
+			}
+			try {
+				CompletableFuture.allOf(tasks).join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException cause) throw cause;
+				throw e;
+			}
+		}
+		final var builder = ImmutableMap.<Move, GameState>builderWithExpectedSize(moves.size());
+		for (int i = 0; i < moves.size(); i++) builder.put(moves.get(i), children[i]);
+		return builder.build();
+	}
+
+	private static void advance(GameState state, ImmutableList<Move> moves, GameState[] children,
+	                            int from, int to) {
+		for (int i = from; i < to; i++) children[i] = state.advance(moves.get(i));
+	}
+}
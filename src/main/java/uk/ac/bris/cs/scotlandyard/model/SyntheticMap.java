@@ -0,0 +1,258 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A generated game map of any size, for measuring how the engine scales past the 199 nodes of the
+ * standard map. The same node count and seed always give the same map.
+ * <br>
+ * Nodes {@code 1..n} are laid out row by row on a square grid and jittered, so edges between
+ * neighbouring cells rarely cross. The transports are layered like the standard map:
+ * <ul>
+ *     <li>TAXI edges join most neighbouring cells, with the odd diagonal, and always connect
+ *     the whole map</li>
+ *     <li>BUS edges join stops on every second row and column</li>
+ *     <li>UNDERGROUND edges join stations on every fourth row and column</li>
+ *     <li>a few FERRY edges jump three columns and one row</li>
+ * </ul>
+ * The map is compiled straight into a {@link CompiledGraph}; the {@link ImmutableValueGraph} a
+ * {@link GameSetup} needs is built from it by {@link #graph()}. {@link #writeGraph(Appendable)} and
+ * {@link #writePositions(Appendable)} write the map in the formats of {@code graph.txt} and
+ * {@code pos.txt}.
+ */
+public final class SyntheticMap {
+
+	/**
+	 * The most nodes a map can have
+	 */
+	public static final int MAX_NODES = 1 << 24;
+
+	// pixels between neighbouring cells, the most a node is moved off its cell and the map margin
+	private static final int SPACING = 48;
+	private static final int JITTER = 14;
+	private static final int MARGIN = 30;
+
+	private static final double TAXI = 0.8;
+	private static final double DIAGONAL = 0.2;
+	private static final double BUS = 0.7;
+	private static final double UNDERGROUND = 0.6;
+	private static final double FERRY = 1 / 80.0;
+
+	private final int count;
+	private final int columns;
+	private final int[] xs;
+	private final int[] ys;
+	private final CompiledGraph compiled;
+
+	// edge list while generating
+	private int edges;
+	private int[] sources;
+	private int[] targets;
+	private byte[] masks;
+
+	private SyntheticMap(int count, long seed) {
+		this.count = count;
+		this.columns = (int) Math.ceil(Math.sqrt(count));
+		final Random random = new Random(seed);
+		xs = new int[count + 1];
+		ys = new int[count + 1];
+		for (int node = 1; node <= count; node++) {
+			xs[node] = MARGIN + column(node) * SPACING + random.nextInt(2 * JITTER + 1) - JITTER;
+			ys[node] = MARGIN + row(node) * SPACING + random.nextInt(2 * JITTER + 1) - JITTER;
+		}
+		sources = new int[count * 3];
+		targets = new int[count * 3];
+		masks = new byte[count * 3];
+		generateTaxi(random);
+		generateStride(random, 2, BUS, Transport.BUS);
+		generateStride(random, 4, UNDERGROUND, Transport.UNDERGROUND);
+		for (int node = 1; node <= count; node++)
+			if (random.nextDouble() < FERRY) {
+				int other = node(row(node) + 1, column(node) + 3);
+				if (other != 0) add(node, other, Transport.FERRY);
+			}
+		compiled = CompiledGraph.ofEdges(count, edges, sources, targets, masks);
+		sources = targets = null;
+		masks = null;
+	}
+
+	/**
+	 * @param nodes the number of nodes, at least 1 and at most {@link #MAX_NODES}
+	 * @param seed the seed
+	 * @return a new map with the given number of nodes, always the same for the same seed
+	 */
+	@Nonnull public static SyntheticMap generate(int nodes, long seed) {
+		if (nodes < 1 || nodes > MAX_NODES)
+			throw new IllegalArgumentException("Node count out of range: " + nodes);
+		return new SyntheticMap(nodes, seed);
+	}
+
+	/**
+	 * @return the number of nodes, which are numbered from 1
+	 */
+	public int nodeCount() { return count; }
+	/**
+	 * @return the compiled adjacency table of the map
+	 */
+	@Nonnull public CompiledGraph compiled() { return compiled; }
+	/**
+	 * @return the game graph of the map, built on first use
+	 * @see CompiledGraph#valueGraph()
+	 */
+	@Nonnull public ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph() {
+		return compiled.valueGraph();
+	}
+	/**
+	 * @param node the node
+	 * @return the horizontal position of the node in pixels, as in {@code pos.txt}
+	 */
+	public int x(int node) { return xs[checkNode(node)]; }
+	/**
+	 * @param node the node
+	 * @return the vertical position of the node in pixels, as in {@code pos.txt}
+	 */
+	public int y(int node) { return ys[checkNode(node)]; }
+	/**
+	 * @return the positions of every node, indexed for hit-testing and viewport queries
+	 */
+	@Nonnull public NodePositions positions() {
+		int[] nodes = new int[count];
+		for (int node = 1; node <= count; node++) nodes[node - 1] = node;
+		return NodePositions.of(count, nodes, Arrays.copyOfRange(xs, 1, count + 1),
+				Arrays.copyOfRange(ys, 1, count + 1));
+	}
+
+	/**
+	 * Writes the map in the format of {@code graph.txt}, which
+	 * {@link ScotlandYard#readGraph(String)} reads.
+	 *
+	 * @param out where to write
+	 * @throws IOException if writing fails
+	 */
+	public void writeGraph(@Nonnull Appendable out) throws IOException {
+		int lines = 0;
+		for (int edge = 0; edge < compiled.edgeCount(); edge++)
+			lines += Integer.bitCount(compiled.transports(edge));
+		out.append(String.valueOf(count)).append(' ').append(String.valueOf(lines / 2)).append('\n');
+		for (int node = 1; node <= count; node++) out.append(String.valueOf(node)).append('\n');
+		for (int node = 1; node <= count; node++)
+			for (int edge = compiled.start(node); edge < compiled.end(node); edge++) {
+				int target = compiled.target(edge);
+				if (target < node) continue;
+				for (Transport t : Transport.values())
+					if ((compiled.transports(edge) & 1 << t.ordinal()) != 0)
+						out.append(String.valueOf(node)).append(' ')
+								.append(String.valueOf(target)).append(' ')
+								.append(name(t)).append('\n');
+			}
+	}
+
+	/**
+	 * Writes the node positions in the format of {@code pos.txt}.
+	 *
+	 * @param out where to write
+	 * @throws IOException if writing fails
+	 */
+	public void writePositions(@Nonnull Appendable out) throws IOException {
+		out.append(String.valueOf(count)).append('\n');
+		for (int node = 1; node <= count; node++)
+			out.append(String.valueOf(node)).append(' ')
+					.append(String.valueOf(xs[node])).append(' ')
+					.append(String.valueOf(ys[node])).append('\n');
+	}
+
+	private void generateTaxi(Random random) {
+		// union-find over the nodes, so that skipped edges can be put back to connect the map
+		final int[] parent = new int[count + 1];
+		for (int node = 1; node <= count; node++) parent[node] = node;
+		final int[] skipped = new int[2 * count];
+		int skips = 0;
+		for (int node = 1; node <= count; node++) {
+			int row = row(node), column = column(node);
+			for (int other : new int[]{node(row, column + 1), node(row + 1, column)}) {
+				if (other == 0) continue;
+				if (random.nextDouble() < TAXI) {
+					add(node, other, Transport.TAXI);
+					union(parent, node, other);
+				} else {
+					skipped[skips++] = node;
+					skipped[skips++] = other;
+				}
+			}
+			// at most one diagonal per cell, so diagonals never cross each other
+			if (random.nextDouble() < DIAGONAL) {
+				boolean down = random.nextBoolean();
+				int a = down ? node : node(row, column + 1);
+				int b = down ? node(row + 1, column + 1) : node(row + 1, column);
+				if (a != 0 && b != 0) {
+					add(a, b, Transport.TAXI);
+					union(parent, a, b);
+				}
+			}
+		}
+		for (int i = 0; i < skips; i += 2)
+			if (union(parent, skipped[i], skipped[i + 1])) add(skipped[i], skipped[i + 1], Transport.TAXI);
+	}
+
+	private void generateStride(Random random, int stride, double p, Transport transport) {
+		for (int node = 1; node <= count; node++) {
+			int row = row(node), column = column(node);
+			if (row % stride != 0 || column % stride != 0) continue;
+			for (int other : new int[]{node(row, column + stride), node(row + stride, column)})
+				if (other != 0 && random.nextDouble() < p) add(node, other, transport);
+		}
+	}
+
+	private static boolean union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if (a == b) return false;
+		parent[a] = b;
+		return true;
+	}
+
+	private static int find(int[] parent, int node) {
+		while (parent[node] != node) node = parent[node] = parent[parent[node]];
+		return node;
+	}
+
+	private void add(int a, int b, Transport transport) {
+		if (edges == sources.length) {
+			sources = Arrays.copyOf(sources, edges * 2);
+			targets = Arrays.copyOf(targets, edges * 2);
+			masks = Arrays.copyOf(masks, edges * 2);
+		}
+		sources[edges] = a;
+		targets[edges] = b;
+		masks[edges++] = (byte) (1 << transport.ordinal());
+	}
+
+	private int row(int node) { return (node - 1) / columns; }
+	private int column(int node) { return (node - 1) % columns; }
+	// the node in the given cell; 0 if the cell is off the map
+	private int node(int row, int column) {
+		if (row < 0 || column < 0 || column >= columns) return 0;
+		long node = (long) row * columns + column + 1;
+		return node > count ? 0 : (int) node;
+	}
+
+	private int checkNode(int node) {
+		if (node < 1 || node > count) throw new IllegalArgumentException("No such node: " + node);
+		return node;
+	}
+
+	private static String name(Transport transport) {
+		String name = transport.name();
+		return name.charAt(0) + name.substring(1).toLowerCase(Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,206 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Shortest routes over a {@link CompiledGraph} for a player with a limited number of tickets. Every
+ * hop spends the ticket its transport requires, or a SECRET ticket on any edge, so a detective out
+ * of UNDERGROUND tickets cannot take the tube and MrX can only cross a FERRY edge with a SECRET
+ * ticket.
+ * <br>
+ * {@link #route} searches breadth first over labels, a label being a node together with the
+ * tickets spent to reach it. A label is dropped when another one at the same node spent no more of
+ * any ticket, so what is left at a node is the Pareto frontier of ticket expenditures reaching it,
+ * and the fewest hops is that of the frontier's first label. Spent tickets are packed into a long,
+ * one byte per {@link Ticket} ordinal, see {@link #spent(long, Ticket)}.
+ * <br>
+ * Work buffers belong to the router and are reused by every call, growing only when a search
+ * needs more labels than any before it; use one router per thread.
+ */
+public final class TicketRouter {
+
+	/**
+	 * The most hops a route is searched for
+	 */
+	public static final int MAX_HOPS = 127;
+	/**
+	 * The hops to a node no route was found to
+	 */
+	public static final int UNREACHABLE = -1;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	// the high bit of every ticket byte
+	private static final long HIGH_BITS = 0x8080808080L;
+	private static final int NONE = -1;
+
+	private final CompiledGraph graph;
+	// per node: the first label of its frontier, NONE if none
+	private final int[] heads;
+	// the labels in the order found, which is breadth first and so also the search queue
+	private int[] labelNodes = new int[64];
+	private int[] labelHops = new int[64];
+	private long[] labelSpent = new long[64];
+	// the next label of the same node's frontier
+	private int[] labelNext = new int[64];
+	private int labels;
+	private final int[] counts = new int[TICKETS.length];
+	private int doubles;
+
+	/**
+	 * @param graph the compiled graph to route over
+	 */
+	public TicketRouter(@Nonnull CompiledGraph graph) {
+		this.graph = graph;
+		this.heads = new int[graph.nodeBound()];
+	}
+
+	/**
+	 * Same as {@link #route(int, TicketBoard, int)} from the player's location with its tickets
+	 *
+	 * @param player the player
+	 * @param maxHops the most hops to search
+	 */
+	public void route(@Nonnull Player player, int maxHops) {
+		route(player.location(), player::count, maxHops);
+	}
+
+	/**
+	 * Finds the routes from the given source that the given tickets pay for, replacing the result
+	 * of the previous call.
+	 *
+	 * @param source the source node
+	 * @param tickets the tickets available
+	 * @param maxHops the most hops to search, at most {@link #MAX_HOPS}
+	 * @throws IllegalArgumentException if the source is not a node of the graph or maxHops is
+	 * out of range
+	 */
+	public void route(int source, @Nonnull TicketBoard tickets, int maxHops) {
+		if (source < 0 || source >= heads.length)
+			throw new IllegalArgumentException("Source out of range: " + source);
+		if (maxHops < 0 || maxHops > MAX_HOPS)
+			throw new IllegalArgumentException("Hop limit out of range: " + maxHops);
+		for (Ticket ticket : TICKETS) counts[ticket.ordinal()] = tickets.getCount(ticket);
+		doubles = counts[Ticket.DOUBLE.ordinal()];
+		final boolean secret = counts[Ticket.SECRET.ordinal()] > 0;
+		Arrays.fill(heads, NONE);
+		labels = 0;
+		add(source, 0, 0L);
+
+		for (int label = 0; label < labels; label++) {
+			final int node = labelNodes[label], hops = labelHops[label] + 1;
+			if (hops > maxHops) break;
+			final long spent = labelSpent[label];
+			for (int edge = graph.start(node), end = graph.end(node); edge < end; edge++) {
+				final int target = graph.target(edge);
+				for (int mask = graph.transports(edge); mask != 0; mask &= mask - 1) {
+					Ticket ticket = CompiledGraph.requiredTicket(Integer.numberOfTrailingZeros(mask));
+					if (ticket != Ticket.SECRET && affords(spent, ticket))
+						offer(target, hops, spend(spent, ticket));
+				}
+				if (secret && affords(spent, Ticket.SECRET))
+					offer(target, hops, spend(spent, Ticket.SECRET));
+			}
+		}
+	}
+
+	private boolean affords(long spent, Ticket ticket) {
+		return spent(spent, ticket) < counts[ticket.ordinal()];
+	}
+
+	private static long spend(long spent, Ticket ticket) {
+		return spent + (1L << ticket.ordinal() * Byte.SIZE);
+	}
+
+	// Add the label unless one already at the node spent no more of every ticket. Labels are
+	// found in order of hops, which equal the tickets spent, so a new label never dominates one
+	// found before it unless they are equal
+	private void offer(int node, int hops, long spent) {
+		for (int label = heads[node]; label != NONE; label = labelNext[label])
+			if (((spent | HIGH_BITS) - labelSpent[label] & HIGH_BITS) == HIGH_BITS) return;
+		add(node, hops, spent);
+	}
+
+	private void add(int node, int hops, long spent) {
+		if (labels == labelNodes.length) {
+			int capacity = labels * 2;
+			labelNodes = Arrays.copyOf(labelNodes, capacity);
+			labelHops = Arrays.copyOf(labelHops, capacity);
+			labelSpent = Arrays.copyOf(labelSpent, capacity);
+			labelNext = Arrays.copyOf(labelNext, capacity);
+		}
+		labelNodes[labels] = node;
+		labelHops[labels] = hops;
+		labelSpent[labels] = spent;
+		// Keep the frontier in order found, so its first label has the fewest hops
+		labelNext[labels] = NONE;
+		if (heads[node] == NONE) heads[node] = labels;
+		else {
+			int last = heads[node];
+			while (labelNext[last] != NONE) last = labelNext[last];
+			labelNext[last] = labels;
+		}
+		labels++;
+	}
+
+	/**
+	 * @param node the node
+	 * @return the fewest hops to the given node; {@link #UNREACHABLE} if it cannot be reached
+	 * within the hop limit
+	 */
+	public int hops(int node) {
+		if (node < 0 || node >= heads.length || heads[node] == NONE) return UNREACHABLE;
+		return labelHops[heads[node]];
+	}
+
+	/**
+	 * MrX may spend a DOUBLE ticket to make two hops in one round, so each DOUBLE ticket saves a
+	 * round on a route of at least two hops; detectives make one hop per round.
+	 *
+	 * @param node the node
+	 * @return the fewest rounds to the given node; {@link #UNREACHABLE} if it cannot be reached
+	 * within the hop limit
+	 */
+	public int rounds(int node) {
+		int hops = hops(node);
+		return hops == UNREACHABLE ? UNREACHABLE : hops - Math.min(doubles, hops / 2);
+	}
+
+	/**
+	 * @param node the node
+	 * @return the number of ticket expenditures on the Pareto frontier of the given node
+	 */
+	public int frontierSize(int node) {
+		int size = 0;
+		if (node >= 0 && node < heads.length)
+			for (int label = heads[node]; label != NONE; label = labelNext[label]) size++;
+		return size;
+	}
+
+	/**
+	 * Passes the Pareto frontier of ticket expenditures reaching the given node to the consumer,
+	 * in order of hops; decode each with {@link #spent(long, Ticket)}.
+	 *
+	 * @param node the node
+	 * @param consumer receives the packed expenditures
+	 */
+	public void forEachFrontier(int node, @Nonnull LongConsumer consumer) {
+		if (node < 0 || node >= heads.length) return;
+		for (int label = heads[node]; label != NONE; label = labelNext[label])
+			consumer.accept(labelSpent[label]);
+	}
+
+	/**
+	 * @param spent a packed expenditure from {@link #forEachFrontier(int, LongConsumer)}
+	 * @param ticket the ticket
+	 * @return the number of the given ticket spent
+	 */
+	public static int spent(long spent, @Nonnull Ticket ticket) {
+		return (int) (spent >>> ticket.ordinal() * Byte.SIZE) & 0xff;
+	}
+}
@@ -0,0 +1,149 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Zobrist hashing of game states. The hash of a state is the XOR of one 64 bit key per feature:
+ * the location of every player, the count of every ticket of every player, every piece still to
+ * move this round, and every entry of MrX's travel log. A transition therefore updates the hash by
+ * XORing out the keys of the features it removes and XORing in the keys of those it adds.
+ * <br>
+ * Keys are not drawn from a random table but computed by a bijective 64 bit mixing function from
+ * the feature itself, so distinct features always have distinct keys and no table has to grow
+ * with the size of the graph.
+ */
+public final class Zobrist {
+
+	private Zobrist() {}
+
+	private static final long LOCATION = 1;
+	private static final long TICKETS = 2;
+	private static final long REMAINING = 3;
+	private static final long LOG = 4;
+
+	private static final Ticket[] ALL_TICKETS = Ticket.values();
+
+	// the splitmix64 finalizer, a bijection on longs
+	private static long key(long kind, int a, int b) {
+		long z = kind << 56 | (long) a << 32 | (b & 0xffffffffL);
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param piece the piece
+	 * @param node the location
+	 * @return the key of the given piece being at the given location
+	 */
+	public static long location(@Nonnull Piece piece, int node) {
+		return key(LOCATION, ScotlandYard.pieceIndex(piece), node);
+	}
+	/**
+	 * @param piece the piece
+	 * @param ticket the ticket
+	 * @param count the ticket count
+	 * @return the key of the given piece holding the given count of the given ticket
+	 */
+	public static long tickets(@Nonnull Piece piece, @Nonnull Ticket ticket, int count) {
+		return key(TICKETS, ScotlandYard.pieceIndex(piece) << 3 | ticket.ordinal(), count);
+	}
+	/**
+	 * @param piece the piece
+	 * @return the key of the given piece still being due to move this round
+	 */
+	public static long remaining(@Nonnull Piece piece) {
+		return key(REMAINING, ScotlandYard.pieceIndex(piece), 0);
+	}
+	/**
+	 * @param round the index of the entry in the travel log
+	 * @param entry the log entry
+	 * @return the key of the given entry at the given index of the travel log
+	 */
+	public static long logEntry(int round, @Nonnull LogEntry entry) {
+		return key(LOG, round << 3 | entry.ticket().ordinal(), entry.location().orElse(-1));
+	}
+
+	/**
+	 * @param player the player
+	 * @return the XOR of the location and ticket keys of the given player
+	 */
+	public static long player(@Nonnull Player player) {
+		long hash = location(player.piece(), player.location());
+		for (Ticket ticket : ALL_TICKETS)
+			hash ^= tickets(player.piece(), ticket, player.count(ticket));
+		return hash;
+	}
+
+	/**
+	 * @param before the player before a transition
+	 * @param after the same player after the transition
+	 * @return the XOR of the keys that differ between the two
+	 */
+	public static long delta(@Nonnull Player before, @Nonnull Player after) {
+		long hash = 0;
+		if (before.location() != after.location())
+			hash ^= location(before.piece(), before.location())
+					^ location(after.piece(), after.location());
+		for (Ticket ticket : ALL_TICKETS) {
+			int old = before.count(ticket), now = after.count(ticket);
+			if (old != now)
+				hash ^= tickets(before.piece(), ticket, old) ^ tickets(after.piece(), ticket, now);
+		}
+		return hash;
+	}
+
+	/**
+	 * Computes the hash of a state from scratch.
+	 *
+	 * @param mrX MrX
+	 * @param detectives the detectives
+	 * @param remaining the pieces still to move this round
+	 * @param log MrX's travel log
+	 * @return the hash
+	 */
+	public static long hash(@Nonnull Player mrX, @Nonnull List<Player> detectives,
+	                        @Nonnull Collection<Piece> remaining, @Nonnull List<LogEntry> log) {
+		long hash = player(mrX);
+		for (Player detective : detectives) hash ^= player(detective);
+		for (Piece piece : remaining) hash ^= remaining(piece);
+		for (int i = 0; i < log.size(); i++) hash ^= logEntry(i, log.get(i));
+		return hash;
+	}
+
+	/**
+	 * Computes the hash of what a board exposes: MrX's location is hidden from a {@link Board},
+	 * so it is only covered while MrX is due to move, and the pieces due to move are those that
+	 * have available moves.
+	 *
+	 * @param board the board
+	 * @return the hash
+	 */
+	public static long hash(@Nonnull Board board) {
+		long hash = 0;
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isDetective()) hash ^= location(piece,
+					board.getDetectiveLocation((Detective) piece).orElseThrow());
+			Board.TicketBoard tickets = board.getPlayerTickets(piece).orElseThrow();
+			for (Ticket ticket : ALL_TICKETS)
+				hash ^= tickets(piece, ticket, tickets.getCount(ticket));
+		}
+		long movers = 0;
+		for (Move move : board.getAvailableMoves()) {
+			int index = ScotlandYard.pieceIndex(move.commencedBy());
+			if ((movers & 1L << index) != 0) continue;
+			movers |= 1L << index;
+			hash ^= remaining(move.commencedBy());
+			if (move.commencedBy().isMrX()) hash ^= location(move.commencedBy(), move.source());
+		}
+		var log = board.getMrXTravelLog();
+		for (int i = 0; i < log.size(); i++) hash ^= logEntry(i, log.get(i));
+		return hash;
+	}
+}
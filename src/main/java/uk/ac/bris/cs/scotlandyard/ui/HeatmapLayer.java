@@ -0,0 +1,121 @@
+package uk.ac.bris.cs.scotlandyard.ui;
+
+import java.util.Arrays;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Scale;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution;
+import uk.ac.bris.cs.scotlandyard.model.NodePositions;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Shades every node of the map by the probability that MrX is there.
+ * <br>
+ * The layer is a single canvas at a quarter of the map's resolution, scaled up to cover it.
+ * Probabilities are bucketed into a few intensity levels on a log scale, each drawn with a
+ * prerendered sprite, and only nodes whose level changed are redrawn: the area under their old
+ * sprite is cleared and every sprite overlapping it is drawn again, clipped to that area. An
+ * update therefore costs the nodes that changed rather than the whole map.
+ * <br>
+ * Not required for the coursework.
+ */
+public class HeatmapLayer extends Canvas {
+
+	private static final int RESOLUTION = 4;
+	private static final int LEVELS = 16;
+	// probabilities at or below this get the lowest visible level
+	private static final double FLOOR = 1e-3;
+	private static final int RADIUS = Math.round(ScotlandYard.MAP_NODE_SIZE * 1.5f / RESOLUTION);
+
+	private final NodePositions positions;
+	private final WritableImage[] sprites = new WritableImage[LEVELS];
+	// [node] -> the level drawn, 0 for nothing
+	private final byte[] drawn;
+	private final byte[] levels;
+	private final double[] probabilities;
+	private final int[] dirty;
+
+	public HeatmapLayer(NodePositions positions, int bound, double width, double height) {
+		super(Math.ceil(width / RESOLUTION), Math.ceil(height / RESOLUTION));
+		this.positions = positions;
+		getTransforms().add(new Scale(RESOLUTION, RESOLUTION, 0, 0));
+		setMouseTransparent(true);
+		drawn = new byte[bound];
+		levels = new byte[bound];
+		probabilities = new double[bound];
+		dirty = new int[bound];
+		for (int level = 1; level < LEVELS; level++) sprites[level] = sprite(level);
+	}
+
+	// a red disc fading out from the centre, more opaque for higher levels
+	private static WritableImage sprite(int level) {
+		int size = 2 * RADIUS + 1;
+		var image = new WritableImage(size, size);
+		PixelWriter writer = image.getPixelWriter();
+		double opacity = 0.15 + 0.7 * level / (LEVELS - 1);
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++) {
+				double d = Math.hypot(x - RADIUS, y - RADIUS) / RADIUS;
+				int alpha = d >= 1 ? 0 : (int) Math.round(255 * opacity * (1 - d) * (1 - d));
+				writer.setArgb(x, y, alpha << 24 | 0xe8 << 16 | 0x2a << 8 | 0x1a);
+			}
+		return image;
+	}
+
+	private static byte level(double probability) {
+		if (probability <= 0) return 0;
+		if (probability <= FLOOR) return 1;
+		double scale = (Math.log10(probability) - Math.log10(FLOOR)) / -Math.log10(FLOOR);
+		return (byte) Math.max(1, Math.min(LEVELS - 1, 1 + (int) (scale * (LEVELS - 1))));
+	}
+
+	/**
+	 * Redraws the nodes whose level changed since the last update.
+	 *
+	 * @param distribution the distribution to show
+	 */
+	public void update(MrXLocationDistribution distribution) {
+		distribution.copyTo(probabilities);
+		int count = 0;
+		for (int node = 0; node < levels.length; node++) {
+			levels[node] = positions.contains(node) ? level(probabilities[node]) : 0;
+			if (levels[node] != drawn[node]) dirty[count++] = node;
+		}
+		GraphicsContext gc = getGraphicsContext2D();
+		for (int i = 0; i < count; i++) {
+			int node = dirty[i];
+			double x = positions.x(node) / (double) RESOLUTION - RADIUS;
+			double y = positions.y(node) / (double) RESOLUTION - RADIUS;
+			double size = 2 * RADIUS + 1;
+			gc.clearRect(x, y, size, size);
+			gc.save();
+			gc.beginPath();
+			gc.rect(x, y, size, size);
+			gc.clip();
+			// every sprite overlapping the cleared square; sprites share a colour, so order is irrelevant
+			positions.forEachWithin((x - RADIUS) * RESOLUTION, (y - RADIUS) * RESOLUTION,
+					(x + size + RADIUS) * RESOLUTION, (y + size + RADIUS) * RESOLUTION,
+					other -> draw(gc, other));
+			gc.restore();
+			drawn[node] = levels[node];
+		}
+	}
+
+	private void draw(GraphicsContext gc, int node) {
+		if (node >= levels.length || levels[node] == 0) return;
+		gc.drawImage(sprites[levels[node]],
+				positions.x(node) / (double) RESOLUTION - RADIUS,
+				positions.y(node) / (double) RESOLUTION - RADIUS);
+	}
+
+	/**
+	 * Clears every node.
+	 */
+	public void clear() {
+		getGraphicsContext2D().clearRect(0, 0, getWidth(), getHeight());
+		Arrays.fill(drawn, (byte) 0);
+	}
+}
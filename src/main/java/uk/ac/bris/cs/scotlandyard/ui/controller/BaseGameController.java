@@ -60,6 +60,7 @@ abstract class BaseGameController<T extends MapController> implements Controller
 
 	@FXML private CheckMenuItem focusToggle;
 	@FXML private CheckMenuItem historyToggle;
+	@FXML private CheckMenuItem heatmapToggle;
 
 	@FXML private CheckMenuItem travelLogToggle;
 	@FXML private CheckMenuItem ticketToggle;
@@ -166,6 +167,7 @@ abstract class BaseGameController<T extends MapController> implements Controller
 		setAndBind(ticketBoard.root().visibleProperty(), ticketToggle.selectedProperty());
 		setAndBind(config.animationProperty(), animationToggle.selectedProperty());
 		setAndBind(config.historyProperty(), historyToggle.selectedProperty());
+		setAndBind(config.heatmapProperty(), heatmapToggle.selectedProperty());
 		setAndBind(config.focusPlayerProperty(), focusToggle.selectedProperty());
 
 
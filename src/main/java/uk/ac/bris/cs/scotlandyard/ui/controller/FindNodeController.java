@@ -65,6 +65,13 @@ import static java.util.stream.Collectors.toList;
 						.zoomBy(gesturePane.getCurrentScale(),
 								gesturePane.targetPointAt(new Point2D(e.getX(), e.getY()))
 										.orElse(gesturePane.targetPointAtViewportCentre()));
+			} else if (e.getButton() == MouseButton.PRIMARY && e.isStillSincePress()) {
+				// clicking a node adds it to the search
+				manager.nodeAtCoordinate(pane.sceneToLocal(e.getSceneX(), e.getSceneY()))
+						.map(String::valueOf)
+						.filter(node -> !SPLITTER.splitToList(search.getText()).contains(node))
+						.ifPresent(node -> search.setText(search.getText().isBlank() ? node
+								: search.getText().trim() + " " + node));
 			}
 		});
 		mapContainer.getChildren().add(gesturePane);
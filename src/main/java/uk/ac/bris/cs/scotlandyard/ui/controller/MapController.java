@@ -52,15 +52,19 @@ import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.ResourceManager.ImageResource;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
 import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.CompiledGraph;
 import uk.ac.bris.cs.scotlandyard.model.Model;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
 import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
 import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
 import uk.ac.bris.cs.scotlandyard.model.Move.Visitor;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution.MovementModel;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
 import uk.ac.bris.cs.scotlandyard.ui.GameControl;
+import uk.ac.bris.cs.scotlandyard.ui.HeatmapLayer;
 import uk.ac.bris.cs.scotlandyard.ui.Utils;
 import uk.ac.bris.cs.scotlandyard.ui.controller.NotificationController.NotificationBuilder;
 import uk.ac.bris.cs.scotlandyard.ui.model.BoardViewProperty;
@@ -96,6 +100,8 @@ class MapController implements Controller, GameControl {
 	final Map<Piece, CounterController> counters = new HashMap<>();
 	final Map<Integer, MoveHintController> hints = new HashMap<>();
 	final Map<Piece, Path> historyPaths = new HashMap<>();
+	final HeatmapLayer heatmap;
+	MrXLocationDistribution mrXDistribution;
 
 
 	MapController(ResourceManager manager,
@@ -133,6 +139,14 @@ class MapController implements Controller, GameControl {
 		Image image = manager.getImage(ImageResource.MAP);
 		mapView.setImage(image);
 		lockSize(image.getWidth(), image.getHeight(), root, historyPane, mask);
+		heatmap = new HeatmapLayer(manager.getMapPositions(),
+				CompiledGraph.of(manager.getGraph()).nodeBound(), image.getWidth(), image.getHeight());
+		heatmap.visibleProperty().bind(view.heatmapProperty());
+		root.getChildren().add(root.getChildren().indexOf(historyPane), heatmap);
+		// the layer is only kept up to date while shown
+		view.heatmapProperty().addListener((o, p, shown) -> {
+			if (shown && mrXDistribution != null) heatmap.update(mrXDistribution);
+		});
 		Platform.runLater(() -> gesturePane.zoomTo(0, Point2D.ZERO));
 	}
 
@@ -163,6 +177,9 @@ class MapController implements Controller, GameControl {
 		counterPane.getChildren().clear();
 		historyPaths.clear();
 		historyPane.getChildren().clear();
+		mrXDistribution = MrXLocationDistribution.of(model.getCurrentBoard(), MovementModel.uniform());
+		heatmap.clear();
+		if (view.heatmapProperty().get()) heatmap.update(mrXDistribution);
 		for (var player : config.everyone()) {
 			CounterController counter = new CounterController(manager, view.animationProperty(),
 					player.piece(), player.location());
@@ -353,6 +370,8 @@ class MapController implements Controller, GameControl {
 	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
 		if (event != Event.MOVE_MADE) return;
 		counters.get(MRX).animateVisibility(Iterables.getLast(board.getMrXTravelLog()).location().isPresent());
+		mrXDistribution.update(board);
+		if (view.heatmapProperty().get()) heatmap.update(mrXDistribution);
 		advanceModel(model);
 	}
 
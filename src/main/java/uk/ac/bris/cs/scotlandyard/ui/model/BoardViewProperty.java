@@ -14,6 +14,7 @@ public class BoardViewProperty {
 	private final BooleanProperty animation = new SimpleBooleanProperty(true);
 	private final BooleanProperty focusPlayer = new SimpleBooleanProperty(false);
 	private final BooleanProperty history = new SimpleBooleanProperty(false);
+	private final BooleanProperty heatmap = new SimpleBooleanProperty(false);
 
 	public ScrollMode getScrollMode() {
 		return scrollMode.get();
@@ -35,4 +36,8 @@ public class BoardViewProperty {
 		return history;
 	}
 
+	public BooleanProperty heatmapProperty() {
+		return heatmap;
+	}
+
 }
@@ -0,0 +1,14 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the bundled Ais
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		MonteCarloAiTest.class,
+		AlphaBetaMrXAiTest.class
+})
+public class AllTest {}
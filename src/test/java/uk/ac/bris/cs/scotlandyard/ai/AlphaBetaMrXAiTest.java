@@ -0,0 +1,121 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the iterative deepening alpha-beta MrX Ai
+ */
+public class AlphaBetaMrXAiTest {
+
+	private static GameState start() throws IOException {
+		return new MyGameStateFactory().build(
+				new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 89),
+						new Player(GREEN, defaultDetectiveTickets(), 29),
+						new Player(BLUE, defaultDetectiveTickets(), 50)));
+	}
+
+	// allowance over the budget for scheduling the call
+	private static final long ALLOWANCE_MILLIS = 150;
+
+	private static Pair<Long, TimeUnit> millis(long millis) {
+		return new Pair<>(millis, TimeUnit.MILLISECONDS);
+	}
+
+	private static int destination(Move move) {
+		return move.accept(new FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+	}
+
+	@Test public void testPicksAvailableMoveWithinBudget() throws IOException {
+		var ai = new AlphaBetaMrXAi();
+		GameState state = start();
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, millis(400));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(elapsed).isLessThan(400 + ALLOWANCE_MILLIS);
+		var statistics = ai.lastSearch().orElseThrow();
+		assertThat(statistics.nanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(400));
+		assertThat(statistics.depth()).isGreaterThanOrEqualTo(2);
+		assertThat(statistics.nodesPerSecond()).isPositive();
+	}
+
+	@Test public void testDeeperSearchIsCutOffByDeadline() throws IOException {
+		var ai = new AlphaBetaMrXAi();
+		GameState state = start();
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, millis(1000));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(elapsed).isLessThan(1000 + ALLOWANCE_MILLIS);
+		var statistics = ai.lastSearch().orElseThrow();
+		assertThat(statistics.nanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(1000));
+		// neither forced nor out of plies, so the deadline ended the search past the first depth
+		assertThat(statistics.depth()).isGreaterThanOrEqualTo(2).isLessThan(127);
+		assertThat(Math.abs(statistics.score())).isLessThan(AlphaBetaMrXAi.WIN / 2);
+	}
+
+	@Test public void testFinishesFirstDepthWhenOutOfTime() throws IOException {
+		var ai = new AlphaBetaMrXAi();
+		GameState state = start();
+		assertThat(state.getAvailableMoves()).contains(ai.pickMove(state, millis(0)));
+		assertThat(ai.lastSearch().orElseThrow().depth()).isEqualTo(1);
+	}
+
+	@Test public void testStaysOutOfReach() throws IOException {
+		var ai = new AlphaBetaMrXAi(16, 2);
+		GameState state = start();
+		Move move = ai.pickMove(state, millis(10_000));
+		// RED on 89 reaches 105 by taxi or bus, and MrX has safer moves
+		assertThat(destination(move)).isNotEqualTo(105);
+		assertThat(ai.lastSearch().orElseThrow().score()).isLessThan(AlphaBetaMrXAi.WIN / 2)
+				.isGreaterThan(-AlphaBetaMrXAi.WIN / 2);
+	}
+
+	@Test public void testTableDoesNotChangeScore() throws IOException {
+		GameState state = start().advance(new SingleMove(MRX, 106, TAXI, 107));
+		state = state.advance(state.getAvailableMoves().asList().get(0));
+		while (!state.getAvailableMoves().iterator().next().commencedBy().isMrX())
+			state = state.advance(state.getAvailableMoves().asList().get(0));
+		var large = new AlphaBetaMrXAi(18, 4);
+		var single = new AlphaBetaMrXAi(0, 4);
+		large.pickMove(state, millis(60_000));
+		single.pickMove(state, millis(60_000));
+		assertThat(large.lastSearch().orElseThrow().depth()).isEqualTo(4);
+		assertThat(large.lastSearch().orElseThrow().score())
+				.isEqualTo(single.lastSearch().orElseThrow().score());
+	}
+
+	@Test public void testChasesOnDetectivesTurn() throws IOException {
+		var ai = new AlphaBetaMrXAi();
+		GameState state = start().advance(new SingleMove(MRX, 106, TAXI, 105));
+		assertThat(state.getAvailableMoves()).contains(ai.pickMove(state, millis(100)));
+	}
+
+}
@@ -0,0 +1,96 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the Monte Carlo tree search Ai
+ */
+public class MonteCarloAiTest {
+
+	private static GameState start(ImmutableList<Boolean> moves) throws IOException {
+		return new MyGameStateFactory().build(new GameSetup(ScotlandYard.standardGraph(), moves),
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 89),
+						new Player(GREEN, defaultDetectiveTickets(), 29),
+						new Player(BLUE, defaultDetectiveTickets(), 50)));
+	}
+
+	// allowance over the budget for scheduling the call and its worker threads
+	private static final long ALLOWANCE_MILLIS = 150;
+
+	private static Pair<Long, TimeUnit> millis(long millis) {
+		return new Pair<>(millis, TimeUnit.MILLISECONDS);
+	}
+
+	@Test public void testPicksAvailableMoveWithinBudget() throws IOException {
+		var ai = new MonteCarloAi(2, 1);
+		GameState state = start(ScotlandYard.STANDARD24MOVES);
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, millis(400));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		ai.onTerminate();
+		assertThat(state.getAvailableMoves()).contains(move);
+		assertThat(elapsed).isLessThan(400 + ALLOWANCE_MILLIS);
+		var statistics = ai.lastSearch().orElseThrow();
+		assertThat(statistics.nanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(400));
+		assertThat(statistics.iterations()).isPositive();
+		assertThat(statistics.nodes()).isPositive();
+		assertThat(statistics.nodesPerSecond()).isPositive();
+	}
+
+	@Test public void testReturnsMoveWhenOutOfTime() throws IOException {
+		var ai = new MonteCarloAi(2, 2);
+		GameState state = start(ScotlandYard.STANDARD24MOVES);
+		assertThat(state.getAvailableMoves()).contains(ai.pickMove(state, millis(0)));
+		ai.onTerminate();
+	}
+
+	@Test public void testDetectivesCaptureRevealedMrX() throws IOException {
+		var ai = new MonteCarloAi(2, 3);
+		// MrX reveals himself on 105, one hop from RED
+		GameState state = start(ImmutableList.of(true, false, false, false, false, false))
+				.advance(new SingleMove(MRX, 106, TAXI, 105));
+		Move move = ai.pickMove(state, millis(300));
+		ai.onTerminate();
+		assertThat(move.commencedBy()).isEqualTo(RED);
+		assertThat(((SingleMove) move).destination).isEqualTo(105);
+	}
+
+	@Test public void testTreeIsReusedOnNextTurn() throws IOException {
+		var ai = new MonteCarloAi(2, 4);
+		// no detective reaches 107 this round, so the game goes on
+		GameState state = start(ScotlandYard.STANDARD24MOVES)
+				.advance(new SingleMove(MRX, 106, TAXI, 107));
+		state = state.advance(ai.pickMove(state, millis(300)));
+		// the next detective searches on from the subtree of the move just made
+		assertThat(state.getAvailableMoves().iterator().next().commencedBy().isDetective()).isTrue();
+		ai.pickMove(state, millis(200));
+		ai.onTerminate();
+		assertThat(ai.lastSearch().orElseThrow().reusedVisits()).isPositive();
+	}
+
+}
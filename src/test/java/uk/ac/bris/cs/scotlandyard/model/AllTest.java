@@ -12,9 +12,23 @@ import org.junit.runners.Suite;
 		GameStateGameOverTest.class,
 		GameStateMoveTest.class,
 		GameStatePlayerTest.class,
+		PlayerTest.class,
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
+		GameStatePackedMoveTest.class,
+		GameStateHashTest.class,
+		MutableGameStateTest.class,
+		GameStateChildrenTest.class,
+		DetectiveRoundTest.class,
+		StateKeyTest.class,
+		CompiledGraphTest.class,
+		DistanceTableTest.class,
+		TicketRouterTest.class,
+		SyntheticMapTest.class,
+		NodePositionsTest.class,
+		MrXBeliefTrackerTest.class,
+		MrXLocationDistributionTest.class,
 		ModelObserverTest.class
 })
 public class AllTest {}
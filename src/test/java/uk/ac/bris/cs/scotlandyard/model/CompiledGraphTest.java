@@ -0,0 +1,147 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the binary format and the caching of compiled graphs
+ */
+public class CompiledGraphTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test public void testStandardGraphRoundTrip() throws IOException {
+		var graph = ScotlandYard.standardGraph();
+		Path file = folder.getRoot().toPath().resolve("graph.bin");
+		CompiledGraph.of(graph).save(file);
+		CompiledGraph loaded = CompiledGraph.load(file);
+		assertThat(loaded.fingerprint()).isEqualTo(CompiledGraph.of(graph).fingerprint());
+		assertThat(loaded.valueGraph()).isEqualTo(graph);
+		assertThat(CompiledGraph.of(loaded.valueGraph())).isSameAs(loaded);
+	}
+
+	// whether the referent is collected once memory is needed
+	static boolean isCollected(WeakReference<?> reference) {
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			byte[][] pressure = new byte[16][];
+			for (int j = 0; j < pressure.length; j++) pressure[j] = new byte[1 << 20];
+		}
+		return reference.get() == null;
+	}
+
+	@Test public void testCacheDoesNotRetainGraph() {
+		var mutable = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>build();
+		mutable.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI));
+		var graph = ImmutableValueGraph.copyOf(mutable);
+		var compiled = CompiledGraph.of(graph);
+		assertThat(compiled.valueGraph()).isSameAs(graph);
+		var reference = new WeakReference<>(graph);
+		graph = null;
+		assertThat(isCollected(reference)).isTrue();
+		// the table outlives its graph, and builds an equal one when asked
+		assertThat(compiled.valueGraph()).isEqualTo(ImmutableValueGraph.copyOf(mutable));
+		assertThat(CompiledGraph.of(compiled.valueGraph())).isSameAs(compiled);
+	}
+
+	@Test public void testMoveTableDoesNotRetainGraph() {
+		// as compiled for a synthetic map, which no cache holds
+		var compiled = CompiledGraph.ofEdges(2, 1, new int[]{1}, new int[]{2}, new byte[]{1});
+		assertThat(MoveTable.of(compiled)).isSameAs(MoveTable.of(compiled));
+		var reference = new WeakReference<>(compiled);
+		compiled = null;
+		assertThat(isCollected(reference)).isTrue();
+	}
+
+	@Test public void testMoveTableHandsOutOneInstanceToRacingThreads() throws Exception {
+		var compiled = CompiledGraph.of(ScotlandYard.standardGraph());
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int trial = 0; trial < 20; trial++) {
+				// a fresh table each trial so that every thread races to fill the same entries
+				var table = new MoveTable(compiled);
+				var barrier = new CyclicBarrier(threads);
+				Callable<List<Object>> fill = () -> {
+					barrier.await();
+					List<Object> instances = new ArrayList<>();
+					for (int source = 1; source < compiled.nodeBound(); source++) {
+						for (int first = compiled.start(source); first < compiled.end(source); first++) {
+							instances.add(table.single(Piece.MrX.MRX, source, first, Ticket.TAXI));
+							int middle = compiled.target(first);
+							for (int second = compiled.start(middle); second < compiled.end(middle); second++)
+								instances.add(table.doubleMove(Piece.MrX.MRX, source,
+										first, Ticket.SECRET, second, Ticket.BUS));
+						}
+						instances.add(table.reveal(Ticket.SECRET, source));
+					}
+					return instances;
+				};
+				List<Future<List<Object>>> futures = executor.invokeAll(
+						Collections.nCopies(threads, fill));
+				List<Object> expected = futures.get(0).get();
+				for (Future<List<Object>> future : futures) {
+					List<Object> actual = future.get();
+					assertThat(actual).hasSameSizeAs(expected);
+					for (int i = 0; i < expected.size(); i++)
+						assertThat(actual.get(i)).isSameAs(expected.get(i));
+				}
+			}
+		} finally { executor.shutdownNow(); }
+	}
+
+	@Test public void testIsolatedNodesSurviveRoundTrip() throws IOException {
+		var graph = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>build();
+		graph.addNode(70);
+		graph.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI, Transport.BUS));
+		Path file = folder.getRoot().toPath().resolve("graph.bin");
+		CompiledGraph.of(ImmutableValueGraph.copyOf(graph)).save(file);
+		CompiledGraph loaded = CompiledGraph.load(file);
+		assertThat(loaded.isNode(70)).isTrue();
+		assertThat(loaded.isNode(69)).isFalse();
+		assertThat(loaded.valueGraph()).isEqualTo(ImmutableValueGraph.copyOf(graph));
+	}
+
+	@Test public void testLoadCorruptFileShouldThrow() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("graph.bin");
+		CompiledGraph.of(ScotlandYard.standardGraph()).save(file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 1] ^= 1;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> CompiledGraph.load(file)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testLoadTruncatedFileShouldThrow() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("graph.bin");
+		CompiledGraph.of(ScotlandYard.standardGraph()).save(file);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+		assertThatThrownBy(() -> CompiledGraph.load(file)).isInstanceOf(IOException.class);
+	}
+
+}
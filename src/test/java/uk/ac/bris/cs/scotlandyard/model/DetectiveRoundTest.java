@@ -0,0 +1,117 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the joint move enumeration of a detective round
+ */
+public class DetectiveRoundTest extends ParameterisedModelTestBase {
+
+	// RED, BLUE and GREEN stand on adjacent nodes, so some joint moves need a detective to vacate
+	// a node before another one moves in
+	private GameState detectivesDue() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 1);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 105);
+		var green = new Player(GREEN, defaultDetectiveTickets(), 106);
+		return gameStateFactory.build(standard24MoveSetup(), mrX, red, blue, green)
+				.advance(taxi(MRX, 1, 8));
+	}
+
+	// Collect the hash of the state at the end of the round for every order of moves
+	private static void allOrders(GameState state, Set<Long> ends) {
+		var moves = state.getAvailableMoves();
+		if (moves.isEmpty() || moves.iterator().next().commencedBy().isMrX()) {
+			ends.add(state.getZobristHash());
+			return;
+		}
+		for (Move move : moves) allOrders(state.advance(move), ends);
+	}
+
+	@Test public void testYieldsEveryJointMoveOnce() {
+		GameState state = detectivesDue();
+		Set<Long> expected = new HashSet<>();
+		allOrders(state, expected);
+		List<Long> actual = new ArrayList<>();
+		for (var joint : DetectiveRound.of(state)) {
+			assertThat(joint.moves()).isNotEmpty().hasSizeLessThanOrEqualTo(3);
+			assertThat(joint.state().getAvailableMoves())
+					.allMatch(move -> move.commencedBy().isMrX());
+			actual.add(joint.state().getZobristHash());
+		}
+		assertThat(actual).doesNotHaveDuplicates();
+		assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+	}
+
+	@Test public void testCaptureCollapsesTerminalRound() {
+		// RED on 91 and BLUE on 105 can both take MrX on 107
+		var mrX = new Player(MRX, defaultMrXTickets(), 106);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 105);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, blue)
+				.advance(taxi(MRX, 106, 107));
+		Set<Long> expected = new HashSet<>();
+		allOrders(state, expected);
+		Set<Long> actual = new HashSet<>();
+		List<List<Move>> redCaptures = new ArrayList<>();
+		for (var joint : DetectiveRound.of(state)) {
+			assertThat(actual.add(joint.state().getZobristHash())).isTrue();
+			if (joint.moves().contains(taxi(RED, 91, 107))) redCaptures.add(joint.moves());
+		}
+		// RED's capture pre-empts BLUE in every order, so it is yielded on its own only
+		assertThat(redCaptures).containsExactly(List.of(taxi(RED, 91, 107)));
+		assertThat(expected).containsAll(actual);
+		assertThat(actual).hasSizeLessThan(expected.size());
+		for (long hash : expected) if (!actual.contains(hash)) {
+			GameState dropped = endOf(state, hash);
+			assertThat(dropped.getWinner()).containsExactlyInAnyOrder(RED, BLUE);
+			assertThat(dropped.getDetectiveLocation(RED)).contains(107);
+		}
+	}
+
+	// the state at the end of the round with the given hash
+	private static GameState endOf(GameState state, long hash) {
+		var moves = state.getAvailableMoves();
+		if (moves.isEmpty() || moves.iterator().next().commencedBy().isMrX())
+			return state.getZobristHash() == hash ? state : null;
+		for (Move move : moves) {
+			GameState end = endOf(state.advance(move), hash);
+			if (end != null) return end;
+		}
+		return null;
+	}
+
+	@Test public void testOrderIsAppliedAtEveryStep() {
+		GameState state = detectivesDue();
+		Comparator<Move> byDestination = Comparator.comparingInt(
+				move -> MoveCodec.destination(MoveCodec.encode(move)));
+		var first = DetectiveRound.of(state, byDestination).iterator().next();
+		Move best = state.getAvailableMoves().stream().min(byDestination).orElseThrow();
+		assertThat(first.moves().get(0)).isEqualTo(best);
+	}
+
+	@Test public void testMrXDueShouldThrow() {
+		GameState state = detectivesDue();
+		assertThatThrownBy(() -> DetectiveRound.of(state.advance(taxi(RED, 91, 56))
+				.advance(taxi(BLUE, 105, 89)).advance(taxi(GREEN, 106, 107))))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,114 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the all-pairs distance tables
+ */
+public class DistanceTableTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	// 1 -taxi- 2 -bus- 3, with 4 not connected
+	private static CompiledGraph line() {
+		var graph = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>build();
+		graph.addNode(4);
+		graph.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI));
+		graph.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS));
+		return CompiledGraph.of(ImmutableValueGraph.copyOf(graph));
+	}
+
+	@Test public void testDistancesRespectTransports() {
+		DistanceTable table = DistanceTable.of(line());
+		assertThat(table.distance(1, 1)).isZero();
+		assertThat(table.distance(1, 3)).isEqualTo(2);
+		assertThat(table.distance(3, 1)).isEqualTo(2);
+		assertThat(table.distance(DistanceTable.mask(Transport.TAXI), 1, 2)).isEqualTo(1);
+		assertThat(table.distance(DistanceTable.mask(Transport.TAXI), 1, 3))
+				.isEqualTo(DistanceTable.UNREACHABLE);
+		assertThat(table.distance(1, 4)).isEqualTo(DistanceTable.UNREACHABLE);
+	}
+
+	@Test public void testStandardDistances() throws IOException {
+		DistanceTable table = ScotlandYard.standardDistances();
+		assertThat(table).isSameAs(ScotlandYard.standardDistances());
+		assertThat(table.distance(1, 8)).isEqualTo(1);
+		assertThat(table.distance(DistanceTable.mask(Transport.TAXI), 91, 105)).isEqualTo(1);
+		for (int node = 1; node <= 199; node++)
+			assertThat(table.distance(1, node)).isBetween(0, 10);
+	}
+
+	@Test public void testSaveAndLoad() throws IOException {
+		CompiledGraph graph = line();
+		Path file = folder.getRoot().toPath().resolve("distances.bin");
+		DistanceTable.of(graph).save(file);
+		DistanceTable loaded = DistanceTable.load(file, graph);
+		assertThat(loaded.distance(1, 3)).isEqualTo(2);
+		assertThat(loaded.distance(DistanceTable.mask(Transport.BUS), 2, 3)).isEqualTo(1);
+		assertThat(DistanceTable.of(graph)).isSameAs(loaded);
+	}
+
+	@Test public void testLoadForOtherGraphShouldThrow() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("distances.bin");
+		DistanceTable.of(line()).save(file);
+		var other = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>build();
+		other.putEdgeValue(1, 2, ImmutableSet.of(Transport.BUS));
+		other.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS));
+		other.addNode(4);
+		assertThatThrownBy(() -> DistanceTable.load(file, CompiledGraph.of(ImmutableValueGraph.copyOf(other))))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test public void testLoadCorruptFileShouldThrow() throws IOException {
+		CompiledGraph graph = line();
+		Path file = folder.getRoot().toPath().resolve("distances.bin");
+		DistanceTable.of(graph).save(file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> DistanceTable.load(file, graph)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testCachedReplacesCorruptFile() throws IOException {
+		CompiledGraph graph = line();
+		Path file = folder.getRoot().toPath().resolve("distances.bin");
+		DistanceTable.of(graph).save(file);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+		assertThat(DistanceTable.cached(file, graph).distance(1, 3)).isEqualTo(2);
+		assertThat(DistanceTable.load(file, graph).distance(1, 3)).isEqualTo(2);
+	}
+
+	@Test public void testTableDoesNotRetainGraph() {
+		// as compiled for a synthetic map, which no cache holds
+		var compiled = CompiledGraph.ofEdges(2, 1, new int[]{1}, new int[]{2}, new byte[]{1});
+		assertThat(DistanceTable.of(compiled).distance(1, 2)).isEqualTo(1);
+		assertThat(DistanceTable.of(compiled)).isSameAs(DistanceTable.of(compiled));
+		var reference = new WeakReference<>(compiled);
+		compiled = null;
+		assertThat(CompiledGraphTest.isCollected(reference)).isTrue();
+	}
+
+	@Test public void testNodeOutOfRangeShouldThrow() {
+		assertThatThrownBy(() -> DistanceTable.of(line()).distance(1, 5))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
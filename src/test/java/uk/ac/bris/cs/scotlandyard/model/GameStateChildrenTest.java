@@ -0,0 +1,56 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the successor expansion of the game state
+ */
+public class GameStateChildrenTest extends ParameterisedModelTestBase {
+
+	private GameState start() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 89);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 29);
+		return gameStateFactory.build(standard24MoveSetup(), mrX, red, blue);
+	}
+
+	@Test public void testChildrenMatchAdvance() {
+		GameState state = start();
+		// MrX at 89 has more than enough moves to be expanded in parallel
+		assertThat(state.getAvailableMoves().size()).isGreaterThan(Successors.PARALLEL_THRESHOLD);
+		var children = state.children(new ForkJoinPool(4));
+		assertThat(children.keySet()).containsExactlyElementsOf(state.getAvailableMoves());
+		children.forEach((move, child) -> assertThat(child.getZobristHash())
+				.isEqualTo(state.advance(move).getZobristHash()));
+	}
+
+	@Test public void testSequentialChildrenMatchParallelChildren() {
+		GameState state = start().advance(taxi(MRX, 89, 105));
+		var sequential = state.children(Runnable::run);
+		var parallel = state.children();
+		assertThat(parallel.keySet()).containsExactlyElementsOf(sequential.keySet());
+		parallel.forEach((move, child) -> assertThat(child.getAvailableMoves())
+				.isEqualTo(sequential.get(move).getAvailableMoves()));
+	}
+
+	@Test public void testChildrenOfFinishedGameIsEmpty() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 86),
+				new Player(RED, defaultDetectiveTickets(), 85));
+		state = state.advance(taxi(MRX, 86, 103)).advance(taxi(RED, 85, 103));
+		assertThat(state.getWinner()).isNotEmpty();
+		assertThat(state.children()).isEmpty();
+	}
+
+}
@@ -160,5 +160,32 @@ public class GameStateDetectivesAvailableMovesTest extends ParameterisedModelTes
 				taxi(BLUE, 85, 84));
 	}
 
+	@Test public void testTurnPassesToMrXIfMoveBlocksLastRemainingDetective() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 104);
+		var red = new Player(RED, makeTickets(2, 0, 0, 0, 0), 33);
+		var green = new Player(GREEN, makeTickets(1, 0, 0, 0, 0), 2);
+		var white = new Player(WHITE, makeTickets(0, 0, 0, 0, 0), 10);
+
+		// green on 2 can only go to 20 as white holds 10, until red takes 20 as well
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, green, white);
+		state = state.advance(taxi(MRX, 104, 86));
+		state = state.advance(taxi(RED, 33, 20));
+		assertThat(state.getWinner()).isEmpty();
+		assertThat(state.getAvailableMoves()).isNotEmpty()
+				.allMatch(m -> m.commencedBy() == MRX);
+	}
+
+	@Test public void testRemainingDetectiveMovesIfMoveFreesItsWay() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 104);
+		var red = new Player(RED, makeTickets(1, 0, 0, 0, 0), 10);
+		var green = new Player(GREEN, makeTickets(1, 0, 0, 0, 0), 2);
+		var yellow = new Player(YELLOW, makeTickets(0, 0, 0, 0, 0), 20);
+
+		// green on 2 is boxed in by red on 10 and yellow on 20, until red moves away
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, green, yellow);
+		state = state.advance(taxi(MRX, 104, 86));
+		state = state.advance(taxi(RED, 10, 11));
+		assertThat(state.getAvailableMoves()).containsExactly(taxi(GREEN, 2, 10));
+	}
 
 }
@@ -0,0 +1,53 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the Zobrist hash of the game state
+ */
+public class GameStateHashTest extends ParameterisedModelTestBase {
+
+	private GameState start() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 45);
+		var red = new Player(RED, defaultDetectiveTickets(), 91);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 29);
+		return gameStateFactory.build(standard24MoveSetup(), mrX, red, blue);
+	}
+
+	@Test public void testHashMatchesBoardHashWhenMrXIsDue() {
+		GameState state = start();
+		assertThat(state.getZobristHash()).isEqualTo(Zobrist.hash((Board) state));
+		state = state.advance(taxi(MRX, 45, 46))
+				.advance(taxi(RED, 91, 105))
+				.advance(taxi(BLUE, 29, 41));
+		assertThat(state.getZobristHash()).isEqualTo(Zobrist.hash((Board) state));
+	}
+
+	@Test public void testTranspositionsHaveSameHash() {
+		GameState state = start().advance(taxi(MRX, 45, 46));
+		GameState redFirst = state.advance(taxi(RED, 91, 105)).advance(taxi(BLUE, 29, 41));
+		GameState blueFirst = state.advance(taxi(BLUE, 29, 41)).advance(taxi(RED, 91, 105));
+		assertThat(redFirst.getZobristHash()).isEqualTo(blueFirst.getZobristHash());
+	}
+
+	@Test public void testDifferentStatesHaveDifferentHashes() {
+		GameState state = start();
+		GameState taxi = state.advance(taxi(MRX, 45, 46));
+		GameState secret = state.advance(secret(MRX, 45, 46));
+		assertThat(taxi.getZobristHash())
+				.isNotEqualTo(state.getZobristHash())
+				.isNotEqualTo(secret.getZobristHash());
+		assertThat(taxi.advance(taxi(RED, 91, 105)).getZobristHash())
+				.isNotEqualTo(taxi.getZobristHash());
+	}
+
+}
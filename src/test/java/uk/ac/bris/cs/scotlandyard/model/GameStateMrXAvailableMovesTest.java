@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
@@ -240,5 +241,49 @@ public class GameStateMrXAvailableMovesTest extends ParameterisedModelTestBase {
 				x2(MRX, 104, SECRET, 116, BUS, 127));
 	}
 
+	@Test public void testMrXNoSecretThenSecretDoubleMoveWithOneSecretTicket() {
+		var mrX = new Player(MRX, makeTickets(1, 0, 0, 1, 1), 104);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 117);
+
+		// one secret ticket covers either hop of a double move, but not both
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue);
+		assertThat(state.getAvailableMoves())
+				.contains(x2(MRX, 104, TAXI, 86, SECRET, 104), x2(MRX, 104, SECRET, 86, TAXI, 104))
+				.noneMatch(m -> m.accept(new FunctionalVisitor<>(
+						single -> false, x2 -> x2.ticket1 == SECRET && x2.ticket2 == SECRET)));
+		// every move offered can be made
+		for (Move move : state.getAvailableMoves()) state.advance(move);
+
+		var richer = new Player(MRX, makeTickets(1, 0, 0, 1, 2), 104);
+		assertThat(gameStateFactory.build(standard24MoveSetup(), richer, blue).getAvailableMoves())
+				.contains(x2(MRX, 104, SECRET, 86, SECRET, 104));
+	}
+
+	@Test public void testMrXNoDoubleMovesInLastRound() {
+		var mrX = new Player(MRX, makeTickets(4, 3, 3, 2, 5), 104);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 117);
+
+		// the second hop of a double move would need a third round
+		GameState state = gameStateFactory.build(
+				new GameSetup(standardGraph(), moves(false, false)), mrX, blue);
+		state = state.advance(taxi(MRX, 104, 86));
+		state = state.advance(taxi(BLUE, 117, 108));
+		assertThat(state.getAvailableMoves()).containsExactlyInAnyOrder(
+				taxi(MRX, 86, 69),
+				secret(MRX, 86, 69),
+				bus(MRX, 86, 52),
+				secret(MRX, 86, 52),
+				bus(MRX, 86, 87),
+				secret(MRX, 86, 87),
+				bus(MRX, 86, 102),
+				secret(MRX, 86, 102),
+				taxi(MRX, 86, 103),
+				secret(MRX, 86, 103),
+				taxi(MRX, 86, 104),
+				secret(MRX, 86, 104),
+				bus(MRX, 86, 116),
+				secret(MRX, 86, 116));
+		for (Move move : state.getAvailableMoves()) state.advance(move);
+	}
 
 }
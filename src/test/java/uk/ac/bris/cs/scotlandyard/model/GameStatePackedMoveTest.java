@@ -0,0 +1,81 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests moves packed with {@link MoveCodec} and the packed move API of the game state
+ */
+public class GameStatePackedMoveTest extends ParameterisedModelTestBase {
+
+	@Test public void testSingleMoveRoundTrip() {
+		var move = taxi(BLUE, 194, 192);
+		long packed = MoveCodec.encode(move);
+		assertThat(MoveCodec.decode(packed)).isEqualTo(move);
+		assertThat(MoveCodec.isDouble(packed)).isFalse();
+		assertThat(MoveCodec.piece(packed)).isEqualTo(BLUE);
+		assertThat(MoveCodec.source(packed)).isEqualTo(194);
+		assertThat(MoveCodec.ticket1(packed)).isEqualTo(TAXI);
+		assertThat(MoveCodec.destination(packed)).isEqualTo(192);
+	}
+
+	@Test public void testDoubleMoveRoundTrip() {
+		var move = x2(MRX, 104, SECRET, 116, BUS, 142);
+		long packed = MoveCodec.encode(move);
+		assertThat(MoveCodec.decode(packed)).isEqualTo(move);
+		assertThat(MoveCodec.isDouble(packed)).isTrue();
+		assertThat(MoveCodec.ticket2(packed)).isEqualTo(BUS);
+		assertThat(MoveCodec.destination(packed)).isEqualTo(142);
+		assertThat(packed).isNotNegative();
+	}
+
+	@Test public void testNodeOutOfRangeShouldThrow() {
+		assertThatThrownBy(() -> MoveCodec.encode(taxi(RED, MoveCodec.MAX_NODE + 1, 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testPackedAvailableMovesMatchAvailableMoves() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 104);
+		var red = new Player(RED, defaultDetectiveTickets(), 117);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red);
+		long[] expected = state.getAvailableMoves().stream()
+				.mapToLong(MoveCodec::encode).sorted().toArray();
+		long[] actual = state.getAvailableMovesPacked().toArray();
+		Arrays.sort(actual);
+		assertThat(actual).containsExactly(expected);
+	}
+
+	@Test public void testAdvancePackedMoveSameAsAdvanceMove() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 104);
+		var red = new Player(RED, defaultDetectiveTickets(), 117);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red);
+		var move = x2(MRX, 104, TAXI, 116, BUS, 142);
+		GameState packed = state.advance(MoveCodec.encode(move));
+		GameState unpacked = state.advance(move);
+		assertThat(packed.getMrXTravelLog()).isEqualTo(unpacked.getMrXTravelLog());
+		assertThat(packed.getAvailableMoves()).isEqualTo(unpacked.getAvailableMoves());
+	}
+
+	@Test public void testAdvanceIllegalPackedMoveShouldThrow() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 104);
+		var red = new Player(RED, defaultDetectiveTickets(), 117);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red);
+		assertThatThrownBy(() -> state.advance(MoveCodec.encode(taxi(RED, 117, 108))))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
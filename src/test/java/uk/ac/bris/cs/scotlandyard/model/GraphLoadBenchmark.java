@@ -0,0 +1,44 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares loading the standard graph from {@code graph.txt} with loading it from a saved
+ * {@link CompiledGraph}. Not part of the test suite, run the main method directly.
+ */
+public final class GraphLoadBenchmark {
+
+	private static final int WARMUP = 200;
+	private static final int RUNS = 1000;
+
+	private interface Load { Object run() throws IOException; }
+
+	private static void measure(String name, Load load) throws IOException {
+		Object sink = null;
+		for (int i = 0; i < WARMUP; i++) sink = load.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) sink = load.run();
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%-28s %9.1f us/load (%s)%n",
+				name, elapsed / 1000.0 / RUNS, sink.getClass().getSimpleName());
+	}
+
+	public static void main(String[] args) throws IOException {
+		String text = Resources.toString(Resources.getResource("graph.txt"), StandardCharsets.UTF_8);
+		Path file = Files.createTempFile("graph", ".bin");
+		try {
+			CompiledGraph.of(ScotlandYard.readGraph(text)).save(file);
+			measure("text to value graph", () -> ScotlandYard.readGraph(text));
+			measure("text to compiled graph", () -> CompiledGraph.of(ScotlandYard.readGraph(text)));
+			measure("binary to compiled graph", () -> CompiledGraph.load(file));
+			measure("binary to value graph", () -> CompiledGraph.load(file).valueGraph());
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
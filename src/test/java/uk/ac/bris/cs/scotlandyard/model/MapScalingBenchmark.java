@@ -0,0 +1,97 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Reports how map generation, random play-outs and ticket routing scale with the size of a
+ * {@link SyntheticMap}. Not part of the test suite, run the main method directly, optionally with
+ * the node counts to measure as arguments.
+ */
+public final class MapScalingBenchmark {
+
+	private static final long SEED = 42;
+	private static final long BUDGET_NANOS = 2_000_000_000L;
+
+	public static void main(String[] args) {
+		int[] sizes = args.length == 0
+				? new int[]{1_000, 10_000, 100_000, 1_000_000}
+				: Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+		System.out.printf("%9s %9s %10s %10s %-24s %12s %12s %12s%n", "nodes", "edges",
+				"generate", "graph", "factory", "advances/s", "moves/s", "routes/s");
+		for (int size : sizes) {
+			long start = System.nanoTime();
+			SyntheticMap map = SyntheticMap.generate(size, SEED);
+			long generated = System.nanoTime();
+			var setup = new GameSetup(map.graph(), ScotlandYard.STANDARD24MOVES);
+			long built = System.nanoTime();
+			var players = players(map);
+			double routes = routes(map.compiled(), players.get(1));
+			for (var factories : ModelFactories.factories()) {
+				Factory<GameState> factory = factories.getKey().get();
+				System.out.printf("%9d %9d %8.1fms %8.1fms %-24s ",
+						size, map.compiled().edgeCount() / 2,
+						(generated - start) / 1e6, (built - generated) / 1e6,
+						factory.getClass().getSimpleName());
+				try {
+					double[] rates = playouts(() -> factory.build(setup, players.get(0),
+							players.subList(1, players.size())));
+					System.out.printf("%12.0f %12.0f %12.0f%n", rates[0], rates[1], routes);
+				} catch (IllegalArgumentException e) {
+					// engines packing moves with MoveCodec cannot reach nodes past MAX_NODE
+					System.out.println("unsupported: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	// MrX and five detectives on distinct nodes spread over the map
+	private static ImmutableList<Player> players(SyntheticMap map) {
+		int step = map.nodeCount() / 6;
+		var players = ImmutableList.<Player>builder()
+				.add(new Player(Piece.MrX.MRX, defaultMrXTickets(), 1 + step / 2));
+		int location = 1 + step / 2;
+		for (Piece.Detective detective : Piece.Detective.values())
+			players.add(new Player(detective, defaultDetectiveTickets(), location += step));
+		return players.build();
+	}
+
+	// advances and available moves generated per second over random play-outs
+	private static double[] playouts(Supplier<GameState> initial) {
+		var random = new Random(SEED);
+		long advances = 0, moves = 0;
+		long start = System.nanoTime(), elapsed;
+		do {
+			GameState state = initial.get();
+			while (true) {
+				var available = state.getAvailableMoves().asList();
+				moves += available.size();
+				if (available.isEmpty()) break;
+				state = state.advance(available.get(random.nextInt(available.size())));
+				advances++;
+			}
+		} while ((elapsed = System.nanoTime() - start) < BUDGET_NANOS);
+		return new double[]{advances * 1e9 / elapsed, moves * 1e9 / elapsed};
+	}
+
+	// searches from the given detective per second, up to 8 hops
+	private static double routes(CompiledGraph graph, Player detective) {
+		var router = new TicketRouter(graph);
+		long searches = 0;
+		long start = System.nanoTime(), elapsed;
+		do {
+			router.route(detective, 8);
+			searches++;
+		} while ((elapsed = System.nanoTime() - start) < BUDGET_NANOS / 4);
+		return searches * 1e9 / elapsed;
+	}
+}
@@ -0,0 +1,115 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the possible locations of MrX tracked from his travel log
+ */
+public class MrXBeliefTrackerTest extends ParameterisedModelTestBase {
+
+	// the neighbours of the node reachable with the given transports
+	private static ImmutableSet<Integer> neighbours(int node, Transport... transports) {
+		var graph = standardGraph();
+		return graph.adjacentNodes(node).stream()
+				.filter(n -> graph.edgeValue(node, n).orElseThrow().stream()
+						.anyMatch(List.of(transports)::contains))
+				.collect(ImmutableSet.toImmutableSet());
+	}
+
+	@Test public void testHiddenMoveFollowsTicket() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 107))
+				.advance(taxi(MRX, 106, 105));
+		var tracker = new MrXBeliefTracker(CompiledGraph.of(standardGraph()));
+		tracker.reset(List.of(106));
+		tracker.update(state);
+		assertThat(tracker.consumed()).isEqualTo(1);
+		assertThat(tracker.candidates()).containsExactlyInAnyOrderElementsOf(
+				neighbours(106, Transport.TAXI).stream().filter(n -> n != 107)
+						.collect(ImmutableSet.toImmutableSet()));
+		assertThat(tracker.size()).isEqualTo(tracker.candidates().size());
+	}
+
+	@Test public void testDoubleMoveSkipsDetectiveOnMiddleHop() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 89),
+				new Player(BLUE, defaultDetectiveTickets(), 107));
+		var tracker = new MrXBeliefTracker(CompiledGraph.of(standardGraph()));
+		tracker.reset(List.of(106));
+		tracker.update(state);
+		state = state.advance(x2(MRX, 106, Ticket.TAXI, 105, Ticket.TAXI, 108));
+		tracker.update(state);
+		// 119 is only reachable through 107, where BLUE stood throughout
+		assertThat(tracker.consumed()).isEqualTo(2);
+		assertThat(tracker.candidates()).containsExactlyInAnyOrder(90, 91, 106, 108);
+	}
+
+	@Test public void testSecretTicketFollowsAnyTransport() {
+		var tracker = new MrXBeliefTracker(CompiledGraph.of(standardGraph()));
+		tracker.reset(List.of(194));
+		tracker.advance(LogEntry.hidden(Ticket.SECRET));
+		assertThat(tracker.candidates()).containsExactlyInAnyOrderElementsOf(
+				neighbours(194, Transport.values()));
+		assertThat(tracker.contains(157)).isTrue();
+	}
+
+	@Test public void testRevealCollapsesToOneNode() {
+		var tracker = new MrXBeliefTracker(CompiledGraph.of(standardGraph()));
+		assertThat(tracker.size()).isEqualTo(199);
+		tracker.advance(LogEntry.reveal(Ticket.BUS, 46));
+		assertThat(tracker.candidates()).containsExactly(46);
+		assertThat(tracker.nextCandidate(0)).isEqualTo(46);
+		assertThat(tracker.nextCandidate(47)).isEqualTo(-1);
+	}
+
+	@Test public void testMrXIsAlwaysACandidate() {
+		var random = new Random(21);
+		for (int game = 0; game < 20; game++) {
+			GameState state = gameStateFactory.build(standard24MoveSetup(), blackPlayer(),
+					redPlayer(), greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+			var tracker = MrXBeliefTracker.of(state);
+			int mrX = blackPlayer().location();
+			while (state.getWinner().isEmpty()) {
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrX = move.accept(new FunctionalVisitor<>(
+						m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+				tracker.update(state);
+				if (state.getWinner().isEmpty()) assertThat(tracker.contains(mrX)).isTrue();
+			}
+		}
+	}
+
+	@Test public void testShorterLogStartsOver() {
+		GameState start = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91));
+		var tracker = MrXBeliefTracker.of(start.advance(taxi(MRX, 106, 105)));
+		assertThat(tracker.consumed()).isEqualTo(1);
+		tracker.update(start);
+		assertThat(tracker.consumed()).isZero();
+		assertThat(tracker.size()).isEqualTo(198);
+	}
+
+}
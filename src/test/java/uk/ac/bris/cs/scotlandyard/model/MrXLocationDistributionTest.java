@@ -0,0 +1,117 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationDistribution.MovementModel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the probability distribution over MrX's location
+ */
+public class MrXLocationDistributionTest extends ParameterisedModelTestBase {
+
+	private static double total(MrXLocationDistribution distribution, int bound) {
+		double total = 0;
+		for (int node = 0; node < bound; node++) total += distribution.probability(node);
+		return total;
+	}
+
+	@Test public void testUniformHiddenMoveSplitsEvenly() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 107))
+				.advance(taxi(MRX, 106, 105));
+		var distribution = new MrXLocationDistribution(
+				CompiledGraph.of(standardGraph()), MovementModel.uniform());
+		distribution.reset(List.of(106));
+		distribution.update(state);
+		// 106 has taxi edges to 105 and 107 only, and BLUE stands on 107
+		assertThat(distribution.probability(105)).isEqualTo(1.0);
+		assertThat(distribution.probability(107)).isZero();
+		assertThat(distribution.mostLikely()).isEqualTo(105);
+	}
+
+	@Test public void testSecretMoveSpreadsOverEveryTransport() {
+		var distribution = new MrXLocationDistribution(
+				CompiledGraph.of(standardGraph()), MovementModel.uniform());
+		distribution.reset(List.of(194));
+		distribution.advance(LogEntry.hidden(Ticket.SECRET));
+		int degree = standardGraph().degree(194);
+		for (int node : standardGraph().adjacentNodes(194))
+			assertThat(distribution.probability(node)).isCloseTo(1.0 / degree, within(1e-12));
+		assertThat(total(distribution, 200)).isCloseTo(1, within(1e-12));
+	}
+
+	@Test public void testAwayFromDetectivesPrefersDistance() throws IOException {
+		var distances = ScotlandYard.standardDistances();
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 89))
+				.advance(taxi(MRX, 106, 105));
+		var distribution = new MrXLocationDistribution(CompiledGraph.of(standardGraph()),
+				MovementModel.awayFromDetectives(distances, 4));
+		distribution.reset(List.of(106));
+		distribution.update(state);
+		// 107 is one hop further from RED at 89 than 105 is, so four times as likely
+		assertThat(distances.distance(89, 105)).isEqualTo(1);
+		assertThat(distances.distance(89, 107)).isEqualTo(2);
+		assertThat(distribution.probability(105)).isCloseTo(0.2, within(1e-12));
+		assertThat(distribution.probability(107)).isCloseTo(0.8, within(1e-12));
+	}
+
+	@Test public void testSupportIsWithinTrackerDuringPlay() {
+		var random = new Random(22);
+		for (int game = 0; game < 10; game++) {
+			GameState state = gameStateFactory.build(standard24MoveSetup(), blackPlayer(),
+					redPlayer(), greenPlayer(), bluePlayer(), whitePlayer(), yellowPlayer());
+			var distribution = MrXLocationDistribution.of(state, MovementModel.uniform());
+			var tracker = MrXBeliefTracker.of(state);
+			int mrX = blackPlayer().location();
+			while (state.getWinner().isEmpty()) {
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrX = move.accept(new FunctionalVisitor<>(
+						m -> m.destination, m -> m.destination2));
+				state = state.advance(move);
+				if (!state.getWinner().isEmpty()) break;
+				distribution.update(state);
+				tracker.update(state);
+				assertThat(distribution.probability(mrX)).isPositive();
+				assertThat(total(distribution, 200)).isCloseTo(1, within(1e-9));
+				for (int node = 0; node < 200; node++)
+					if (distribution.probability(node) > 0) assertThat(tracker.contains(node)).isTrue();
+			}
+		}
+	}
+
+	@Test public void testParallelMatchesSequential() {
+		CompiledGraph graph = SyntheticMap.generate(20_000, 9).compiled();
+		var parallel = new MrXLocationDistribution(graph, MovementModel.uniform(), 0);
+		var sequential = new MrXLocationDistribution(graph, MovementModel.uniform(), Integer.MAX_VALUE);
+		for (var distribution : List.of(parallel, sequential)) {
+			distribution.reset(List.of(10_000));
+			for (Ticket ticket : List.of(Ticket.TAXI, Ticket.BUS, Ticket.SECRET, Ticket.TAXI))
+				distribution.advance(LogEntry.hidden(ticket));
+		}
+		double[] a = new double[graph.nodeBound()], b = new double[graph.nodeBound()];
+		parallel.copyTo(a);
+		sequential.copyTo(b);
+		assertThat(a).containsExactly(b);
+	}
+
+}
@@ -0,0 +1,83 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the make/unmake operations of {@link MutableGameState}
+ */
+public class MutableGameStateTest extends ParameterisedModelTestBase {
+
+	private final Player mrX = new Player(MRX, defaultMrXTickets(), 45);
+	private final Player red = new Player(RED, defaultDetectiveTickets(), 91);
+	private final Player blue = new Player(BLUE, defaultDetectiveTickets(), 29);
+
+	private MutableGameState start() {
+		return new MutableGameState(standard24MoveSetup(), mrX, ImmutableList.of(red, blue));
+	}
+
+	@Test public void testUndoRestoresState() {
+		MutableGameState game = start();
+		long hash = game.getZobristHash();
+		var moves = game.getAvailableMoves();
+		game.doMove(x2(MRX, 45, TAXI, 46, TAXI, 47));
+		game.doMove(taxi(RED, 91, 105));
+		assertThat(game.depth()).isEqualTo(2);
+		game.undoMove();
+		game.undoMove();
+		assertThat(game.depth()).isZero();
+		assertThat(game.getZobristHash()).isEqualTo(hash);
+		assertThat(game.getAvailableMoves()).isEqualTo(moves);
+		assertThat(game.getMrXTravelLog()).isEmpty();
+		assertThat(game.getPlayerTickets(MRX).orElseThrow().getCount(TAXI)).isEqualTo(4);
+		assertThat(game.getDetectiveLocation(RED)).contains(91);
+	}
+
+	@Test public void testMatchesGameState() {
+		MutableGameState game = start();
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, blue);
+		for (Move move : ImmutableList.of(taxi(MRX, 45, 46), taxi(BLUE, 29, 41),
+				taxi(RED, 91, 105), secret(MRX, 46, 47))) {
+			game.doMove(move);
+			state = state.advance(move);
+			assertThat(game.getZobristHash()).isEqualTo(state.getZobristHash());
+			assertThat(game.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+			assertThat(game.getMrXTravelLog()).isEqualTo(state.getMrXTravelLog());
+		}
+	}
+
+	@Test public void testIllegalMoveLeavesStateUnchanged() {
+		MutableGameState game = start();
+		long hash = game.getZobristHash();
+		assertThatThrownBy(() -> game.doMove(taxi(RED, 91, 105)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(game::undoMove).isInstanceOf(IllegalStateException.class);
+		assertThat(game.getZobristHash()).isEqualTo(hash);
+		assertThat(game.depth()).isZero();
+	}
+
+	@Test public void testPackedMovesMatchAvailableMoves() {
+		MutableGameState game = start();
+		long[] buffer = new long[game.maxAvailableMoves()];
+		int size = game.availableMoves(buffer);
+		long[] expected = game.getAvailableMoves().stream().mapToLong(MoveCodec::encode).toArray();
+		Arrays.sort(buffer, 0, size);
+		Arrays.sort(expected);
+		assertThat(Arrays.copyOf(buffer, size)).isEqualTo(expected);
+	}
+
+}
@@ -0,0 +1,95 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the spatial index over node positions
+ */
+public class NodePositionsTest {
+
+	// the node closest to the position, lowest id on ties, by looking at every node
+	private static int bruteNearest(NodePositions positions, int bound, double x, double y,
+	                                double maxDistance) {
+		int best = NodePositions.NONE;
+		double bestDistance = maxDistance * maxDistance;
+		for (int node = 0; node < bound; node++) {
+			if (!positions.contains(node)) continue;
+			double dx = positions.x(node) - x, dy = positions.y(node) - y;
+			double distance = dx * dx + dy * dy;
+			if (distance < bestDistance || distance == bestDistance && best == NodePositions.NONE) {
+				best = node;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	@Test public void testNearestMatchesBruteForce() {
+		NodePositions positions = SyntheticMap.generate(3000, 11).positions();
+		var random = new Random(11);
+		for (int i = 0; i < 2000; i++) {
+			double x = random.nextDouble() * 3000 - 200, y = random.nextDouble() * 3000 - 200;
+			double maxDistance = i % 2 == 0 ? Double.POSITIVE_INFINITY : 40;
+			assertThat(positions.nearest(x, y, maxDistance))
+					.isEqualTo(bruteNearest(positions, 3001, x, y, maxDistance));
+		}
+	}
+
+	@Test public void testNearestOnNode() {
+		NodePositions positions = NodePositions.of(3,
+				new int[]{5, 9, 2}, new int[]{0, 100, 100}, new int[]{0, 0, 100});
+		assertThat(positions.nearest(99, 1, 10)).isEqualTo(9);
+		assertThat(positions.nearest(50, 50, 10)).isEqualTo(NodePositions.NONE);
+		assertThat(positions.nearest(50, 50, 100)).isEqualTo(2);
+	}
+
+	@Test public void testWithinMatchesBruteForce() {
+		SyntheticMap map = SyntheticMap.generate(3000, 12);
+		NodePositions positions = map.positions();
+		var random = new Random(12);
+		for (int i = 0; i < 200; i++) {
+			double minX = random.nextDouble() * 2500, minY = random.nextDouble() * 2500;
+			double maxX = minX + random.nextDouble() * 600, maxY = minY + random.nextDouble() * 600;
+			List<Integer> found = new ArrayList<>();
+			int count = positions.forEachWithin(minX, minY, maxX, maxY, found::add);
+			List<Integer> expected = new ArrayList<>();
+			for (int node = 1; node <= map.nodeCount(); node++)
+				if (map.x(node) >= minX && map.x(node) <= maxX && map.y(node) >= minY && map.y(node) <= maxY)
+					expected.add(node);
+			assertThat(count).isEqualTo(expected.size());
+			assertThat(found).containsExactlyInAnyOrderElementsOf(expected);
+		}
+	}
+
+	@Test public void testStandardPositions() throws IOException {
+		NodePositions positions = ScotlandYard.pngMapPositions();
+		var entries = ScotlandYard.pngMapPositionEntries();
+		assertThat(positions.size()).isEqualTo(199);
+		for (var entry : entries.entrySet()) {
+			assertThat(positions.x(entry.getKey())).isEqualTo(entry.getValue().getKey());
+			assertThat(positions.y(entry.getKey())).isEqualTo(entry.getValue().getValue());
+			assertThat(positions.nearest(entry.getValue().getKey(), entry.getValue().getValue(), 1))
+					.isEqualTo(entry.getKey());
+		}
+	}
+
+	@Test public void testMissingNodeShouldThrow() {
+		NodePositions positions = NodePositions.of(1, new int[]{3}, new int[]{0}, new int[]{0});
+		assertThat(positions.contains(2)).isFalse();
+		assertThatThrownBy(() -> positions.x(2)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testDuplicateNodeShouldThrow() {
+		assertThatThrownBy(() -> NodePositions.of(2, new int[]{3, 3}, new int[]{0, 1}, new int[]{0, 1}))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+
+/**
+ * Tests the packed ticket board of {@link Player}
+ */
+public class PlayerTest {
+
+	@Test public void testTicketCountOutOfRangeShouldThrow() {
+		assertThat(new Player(MRX, ImmutableMap.of(TAXI, 255), 1).count(TAXI)).isEqualTo(255);
+		assertThatThrownBy(() -> new Player(MRX, ImmutableMap.of(TAXI, 256), 1))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new Player(MRX, ImmutableMap.of(BUS, -1), 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testGivingPastRangeShouldThrow() {
+		var player = new Player(MRX, ImmutableMap.of(TAXI, 254), 1).give(TAXI);
+		assertThat(player.count(TAXI)).isEqualTo(255);
+		assertThatThrownBy(() -> player.give(TAXI)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testAbsentTicketStaysAbsent() {
+		var player = new Player(RED, ImmutableMap.of(TAXI, 1, SECRET, 0), 1);
+		var given = player.give(DOUBLE).give(SECRET);
+		assertThat(given.tickets()).containsOnlyKeys(TAXI, SECRET);
+		assertThat(given.count(DOUBLE)).isZero();
+		assertThat(given.count(SECRET)).isEqualTo(1);
+		assertThatThrownBy(() -> given.use(DOUBLE)).isInstanceOf(IllegalArgumentException.class);
+		var used = given.use(TAXI).use(SECRET);
+		assertThat(used.tickets()).isEqualTo(ImmutableMap.of(TAXI, 0, SECRET, 0));
+		assertThat(used).isEqualTo(new Player(RED, ImmutableMap.of(TAXI, 0, SECRET, 0), 1));
+	}
+
+	@Test public void testCountsMatchTicketMapArithmetic() {
+		var random = new Random(42);
+		Ticket[] tickets = Ticket.values();
+		for (int game = 0; game < 100; game++) {
+			// the ticket board as a map, given and used the way Player did before packing
+			var expected = new EnumMap<Ticket, Integer>(Ticket.class);
+			for (Ticket ticket : tickets)
+				if (random.nextBoolean()) expected.put(ticket, random.nextInt(4));
+			var player = new Player(MRX, ImmutableMap.copyOf(expected), 1);
+			for (int step = 0; step < 50; step++) {
+				Ticket ticket = tickets[random.nextInt(tickets.length)];
+				if (random.nextBoolean()) {
+					expected.computeIfPresent(ticket, (t, n) -> n + 1);
+					player = player.give(ticket);
+				} else if (expected.getOrDefault(ticket, 0) != 0) {
+					expected.computeIfPresent(ticket, (t, n) -> n - 1);
+					player = player.use(ticket);
+				} else {
+					var current = player;
+					assertThatThrownBy(() -> current.use(ticket))
+							.isInstanceOf(IllegalArgumentException.class);
+				}
+				for (Ticket t : tickets) {
+					assertThat(player.count(t)).isEqualTo(expected.getOrDefault(t, 0));
+					assertThat(player.has(t)).isEqualTo(expected.getOrDefault(t, 0) != 0);
+				}
+			}
+			assertThat(player.tickets()).isEqualTo(expected);
+			var rebuilt = new Player(MRX, ImmutableMap.copyOf(expected), 1);
+			assertThat(player).isEqualTo(rebuilt).hasSameHashCodeAs(rebuilt);
+		}
+	}
+
+}
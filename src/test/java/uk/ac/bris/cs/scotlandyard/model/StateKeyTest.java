@@ -0,0 +1,57 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the symmetry reduced state keys
+ */
+public class StateKeyTest extends ParameterisedModelTestBase {
+
+	private GameState game(Piece first, Piece second, ImmutableMap<ScotlandYard.Ticket, Integer> tickets) {
+		return gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(first, defaultDetectiveTickets(), 91),
+				new Player(second, tickets, 29));
+	}
+
+	@Test public void testSwappedDetectivesWithSameTicketsHaveSameKey() {
+		GameState redFirst = game(RED, GREEN, defaultDetectiveTickets());
+		GameState greenFirst = game(GREEN, RED, defaultDetectiveTickets());
+		assertThat(StateKey.of(redFirst)).isEqualTo(StateKey.of(greenFirst));
+		assertThat(StateKey.of(redFirst).fingerprint()).isEqualTo(StateKey.of(greenFirst).fingerprint());
+		assertThat(StateKey.of(redFirst.advance(taxi(MRX, 45, 46))))
+				.isEqualTo(StateKey.of(greenFirst.advance(taxi(MRX, 45, 46))));
+	}
+
+	@Test public void testSwappedDetectivesWithDifferentTicketsHaveDifferentKeys() {
+		var fewer = ImmutableMap.of(TAXI, 10, BUS, 8, UNDERGROUND, 3);
+		GameState redFirst = game(RED, BLUE, fewer);
+		GameState blueFirst = game(BLUE, RED, defaultDetectiveTickets());
+		assertThat(StateKey.of(redFirst)).isNotEqualTo(StateKey.of(blueFirst));
+	}
+
+	@Test public void testDetectivesDueArePartOfKey() {
+		GameState state = game(RED, GREEN, defaultDetectiveTickets()).advance(taxi(MRX, 45, 46));
+		GameState redMoved = state.advance(taxi(RED, 91, 105));
+		GameState bothMoved = redMoved.advance(taxi(GREEN, 29, 41));
+		assertThat(StateKey.of(redMoved)).isNotEqualTo(StateKey.of(state));
+		assertThat(StateKey.of(bothMoved))
+				.isEqualTo(StateKey.of(state.advance(taxi(GREEN, 29, 41)).advance(taxi(RED, 91, 105))));
+	}
+
+}
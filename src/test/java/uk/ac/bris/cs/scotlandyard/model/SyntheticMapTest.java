@@ -0,0 +1,90 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the generated maps
+ */
+public class SyntheticMapTest {
+
+	@Test public void testSameSeedGivesSameMap() {
+		assertThat(SyntheticMap.generate(1000, 42).compiled().fingerprint())
+				.isEqualTo(SyntheticMap.generate(1000, 42).compiled().fingerprint());
+		assertThat(SyntheticMap.generate(1000, 42).compiled().fingerprint())
+				.isNotEqualTo(SyntheticMap.generate(1000, 43).compiled().fingerprint());
+	}
+
+	@Test public void testTaxiConnectsEveryNode() {
+		SyntheticMap map = SyntheticMap.generate(5000, 7);
+		CompiledGraph graph = map.compiled();
+		var seen = new BitSet();
+		var queue = new ArrayDeque<Integer>();
+		seen.set(1);
+		queue.add(1);
+		while (!queue.isEmpty()) {
+			int node = queue.remove();
+			for (int edge = graph.start(node); edge < graph.end(node); edge++)
+				if ((graph.transports(edge) & 1 << Transport.TAXI.ordinal()) != 0
+						&& !seen.get(graph.target(edge))) {
+					seen.set(graph.target(edge));
+					queue.add(graph.target(edge));
+				}
+		}
+		assertThat(seen.cardinality()).isEqualTo(map.nodeCount());
+	}
+
+	@Test public void testEveryTransportIsUsed() {
+		CompiledGraph graph = SyntheticMap.generate(10_000, 1).compiled();
+		int used = 0;
+		for (int edge = 0; edge < graph.edgeCount(); edge++) used |= graph.transports(edge);
+		assertThat(used).isEqualTo((1 << Transport.values().length) - 1);
+	}
+
+	@Test public void testWrittenGraphReadsBack() throws IOException {
+		SyntheticMap map = SyntheticMap.generate(1000, 3);
+		var text = new StringBuilder();
+		map.writeGraph(text);
+		assertThat(ScotlandYard.readGraph(text.toString())).isEqualTo(map.graph());
+	}
+
+	@Test public void testWrittenPositions() throws IOException {
+		SyntheticMap map = SyntheticMap.generate(300, 3);
+		var text = new StringBuilder();
+		map.writePositions(text);
+		var lines = text.toString().lines().toArray(String[]::new);
+		assertThat(lines).hasSize(301);
+		assertThat(lines[0]).isEqualTo("300");
+		assertThat(lines[17]).isEqualTo("17 " + map.x(17) + " " + map.y(17));
+	}
+
+	@Test public void testGameCanBePlayedOnMap() {
+		SyntheticMap map = SyntheticMap.generate(2000, 5);
+		GameState state = new MyGameStateFactory().build(
+				new GameSetup(map.graph(), ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 1000),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 1)));
+		assertThat(state.getAvailableMoves()).isNotEmpty();
+	}
+
+	@Test public void testNodeCountOutOfRangeShouldThrow() {
+		assertThatThrownBy(() -> SyntheticMap.generate(0, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,112 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests routing with limited tickets
+ */
+public class TicketRouterTest {
+
+	// 1 -taxi- 2 -bus- 3 -underground- 1, 3 -ferry- 4
+	private static CompiledGraph triangle() {
+		var graph = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>build();
+		graph.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI));
+		graph.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS));
+		graph.putEdgeValue(1, 3, ImmutableSet.of(Transport.UNDERGROUND));
+		graph.putEdgeValue(3, 4, ImmutableSet.of(Transport.FERRY));
+		return CompiledGraph.of(ImmutableValueGraph.copyOf(graph));
+	}
+
+	private static Board.TicketBoard tickets(int taxi, int bus, int underground, int x2, int secret) {
+		int[] counts = {taxi, bus, underground, x2, secret};
+		return ticket -> counts[ticket.ordinal()];
+	}
+
+	private static List<String> frontier(TicketRouter router, int node) {
+		var spent = new ArrayList<String>();
+		router.forEachFrontier(node, packed -> {
+			var builder = new StringBuilder();
+			for (Ticket ticket : Ticket.values())
+				builder.append(TicketRouter.spent(packed, ticket));
+			spent.add(builder.toString());
+		});
+		return spent;
+	}
+
+	@Test public void testRoutesRespectTicketCounts() {
+		var router = new TicketRouter(triangle());
+		router.route(1, tickets(1, 1, 1, 0, 0), 4);
+		assertThat(router.hops(1)).isZero();
+		assertThat(router.hops(3)).isEqualTo(1);
+		assertThat(router.hops(4)).isEqualTo(TicketRouter.UNREACHABLE);
+		// Taxi then bus, or underground
+		assertThat(frontier(router, 3)).containsExactly("00100", "11000");
+
+		router.route(1, tickets(1, 1, 0, 0, 0), 4);
+		assertThat(router.hops(3)).isEqualTo(2);
+		assertThat(frontier(router, 3)).containsExactly("11000");
+
+		router.route(1, tickets(1, 1, 1, 0, 0), 1);
+		assertThat(router.hops(2)).isEqualTo(1);
+		assertThat(router.hops(3)).isEqualTo(1);
+		assertThat(router.frontierSize(3)).isEqualTo(1);
+	}
+
+	@Test public void testSecretTicketsTakeAnyTransport() {
+		var router = new TicketRouter(triangle());
+		router.route(2, tickets(0, 0, 0, 0, 2), 4);
+		assertThat(router.hops(4)).isEqualTo(2);
+		assertThat(frontier(router, 4)).containsExactly("00002");
+		router.route(2, tickets(0, 1, 0, 0, 1), 4);
+		assertThat(router.hops(4)).isEqualTo(2);
+		assertThat(frontier(router, 4)).containsExactly("01001");
+		router.route(2, tickets(0, 1, 0, 0, 0), 4);
+		assertThat(router.hops(4)).isEqualTo(TicketRouter.UNREACHABLE);
+	}
+
+	@Test public void testDoubleTicketsSaveRounds() {
+		var router = new TicketRouter(triangle());
+		router.route(new Player(MrX.MRX,
+				ImmutableMap.of(Ticket.TAXI, 1, Ticket.BUS, 1, Ticket.DOUBLE, 1, Ticket.SECRET, 1), 1), 4);
+		// Taxi, bus then secret over the ferry, the underground needs the only secret ticket
+		assertThat(router.hops(4)).isEqualTo(3);
+		assertThat(router.rounds(4)).isEqualTo(2);
+		assertThat(frontier(router, 4)).containsExactly("11001");
+		assertThat(router.rounds(2)).isEqualTo(1);
+		assertThat(router.rounds(1)).isZero();
+	}
+
+	@Test public void testMatchesDistancesWhenTicketsSuffice() throws IOException {
+		var graph = CompiledGraph.of(ScotlandYard.standardGraph());
+		var distances = DistanceTable.of(graph);
+		var router = new TicketRouter(graph);
+		int roads = DistanceTable.mask(Transport.TAXI, Transport.BUS);
+		router.route(new Player(Detective.RED,
+				ImmutableMap.of(Ticket.TAXI, 11, Ticket.BUS, 8, Ticket.UNDERGROUND, 0), 1), 4);
+		for (int node = 1; node <= 199; node++) {
+			int distance = distances.distance(roads, 1, node);
+			if (distance != DistanceTable.UNREACHABLE && distance <= 4)
+				assertThat(router.hops(node)).isEqualTo(distance);
+			else assertThat(router.hops(node)).isEqualTo(TicketRouter.UNREACHABLE);
+		}
+		assertThatThrownBy(() -> router.route(0, tickets(1, 1, 1, 0, 0), 200))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}